@@ -20,10 +20,13 @@ import edu.wpi.first.cscore.UsbCamera;
 import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import edu.wpi.first.wpilibj2.command.button.RobotModeTriggers;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import frc.robot.commands.DriveCommands;
+import frc.robot.commands.ScoringCoordinator;
 import frc.robot.subsystems.algaeIntake.AlgaeIntake;
 import frc.robot.subsystems.algaeIntake.AlgaeIntakeSparkMax;
 import frc.robot.subsystems.climber.Climber;
@@ -37,8 +40,10 @@ import frc.robot.subsystems.drive.ModuleIO;
 import frc.robot.subsystems.drive.ModuleIOSim;
 import frc.robot.subsystems.drive.ModuleIOSpark;
 import frc.robot.subsystems.elevator.Elevator;
-import frc.robot.subsystems.elevator.ElevatorConstants;
 import frc.robot.subsystems.elevator.ElevatorModule;
+import frc.robot.subsystems.superstructure.Superstructure;
+import frc.robot.subsystems.superstructure.SuperstructureState;
+import frc.robot.util.PathPrefetcher.NextTask;
 import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 
 /**
@@ -54,6 +59,8 @@ public class RobotContainer {
   private final CoralIntake m_coralIntake = new CoralIntake(new CoralIntakeSparkMax());
   private final AlgaeIntake m_algaeIntake = new AlgaeIntake(new AlgaeIntakeSparkMax());
   private final Climber m_climber = new Climber(new ClimberSparkMax());
+  private final Superstructure superstructure =
+      new Superstructure(m_elevator, m_coralIntake, m_algaeIntake);
 
   // Controller
   private final CommandXboxController Dcontroller = new CommandXboxController(0);
@@ -67,25 +74,10 @@ public class RobotContainer {
 
   /** The container for the robot. Contains subsystems, OI devices, and commands. */
   public RobotContainer() {
-    NamedCommands.registerCommand(
-        "L1",
-        new SequentialCommandGroup(
-            m_elevator.elevatorToLevel1().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)));
-
-    NamedCommands.registerCommand(
-        "L2",
-        new SequentialCommandGroup(
-            m_elevator.elevatorToLevel2().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)));
-
-    NamedCommands.registerCommand(
-        "L3",
-        new SequentialCommandGroup(
-            m_elevator.elevatorToLevel3().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)));
-
-    NamedCommands.registerCommand(
-        "L4",
-        new SequentialCommandGroup(
-            m_elevator.elevatorToLevel4().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)));
+    NamedCommands.registerCommand("L1", superstructure.goTo(SuperstructureState.L1));
+    NamedCommands.registerCommand("L2", superstructure.goTo(SuperstructureState.L2));
+    NamedCommands.registerCommand("L3", superstructure.goTo(SuperstructureState.L3));
+    NamedCommands.registerCommand("L4", superstructure.goTo(SuperstructureState.L4));
 
     NamedCommands.registerCommand("shoot coral", m_coralIntake.outtakeCoral().withTimeout(3));
 
@@ -124,7 +116,7 @@ public class RobotContainer {
                 new ModuleIO() {},
                 new ModuleIO() {},
                 new ModuleIO() {});
-        // new VisionIO() {});
+        // new VisionIOReplay());
         // new VisionIOLimelight());
         break;
     }
@@ -147,6 +139,16 @@ public class RobotContainer {
         "Drive SysId (Dynamic Forward)", drive.sysIdDynamic(SysIdRoutine.Direction.kForward));
     autoChooser.addOption(
         "Drive SysId (Dynamic Reverse)", drive.sysIdDynamic(SysIdRoutine.Direction.kReverse));
+    autoChooser.addOption(
+        "Elevator SysId (Quasistatic Up)",
+        m_elevator.sysIdQuasistatic(SysIdRoutine.Direction.kForward));
+    autoChooser.addOption(
+        "Elevator SysId (Quasistatic Down)",
+        m_elevator.sysIdQuasistatic(SysIdRoutine.Direction.kReverse));
+    autoChooser.addOption(
+        "Elevator SysId (Dynamic Up)", m_elevator.sysIdDynamic(SysIdRoutine.Direction.kForward));
+    autoChooser.addOption(
+        "Elevator SysId (Dynamic Down)", m_elevator.sysIdDynamic(SysIdRoutine.Direction.kReverse));
 
     // Configure the button bindings
     configureButtonBindings();
@@ -171,36 +173,36 @@ public class RobotContainer {
 
     // Dcontroller.rightTrigger().whileTrue(DriveCommands.slowMode(drive));
 
+    // The elevator encoder starts wherever the carriage was at boot, so home it on the first enable
+    // of any mode before anything moves it, ignoring operator commands until it's done
+    RobotModeTriggers.autonomous()
+        .or(RobotModeTriggers.teleop())
+        .or(RobotModeTriggers.test())
+        .onTrue(
+            m_elevator
+                .home()
+                .unless(m_elevator::hasAttemptedHoming)
+                .withInterruptBehavior(InterruptionBehavior.kCancelIncoming));
+
     // //when bottom on Dpad is pressed, the level 0 sequence is run
-    m_operatorController.povDown().onTrue(L1);
+    m_operatorController.povDown().onTrue(superstructure.goTo(SuperstructureState.L1));
 
     // when left on Dpad is pressed, the level 1 sequence is run
-    m_operatorController.povLeft().onTrue(L2);
+    m_operatorController.povLeft().onTrue(superstructure.goTo(SuperstructureState.L2));
 
     // when right on Dpad is pressed, the level 2 sequence is run
-    m_operatorController.povRight().onTrue(L3);
+    m_operatorController.povRight().onTrue(superstructure.goTo(SuperstructureState.L3));
 
     // when top on Dpad is pressed, the level 3 sequence is run
-    m_operatorController.povUp().onTrue(L4);
+    m_operatorController.povUp().onTrue(superstructure.goTo(SuperstructureState.L4));
 
     // when the Y button is held down, the elevator is set to level 2.55 and the coral intake is set
     // to pivot position 5
-    m_operatorController
-        .y()
-        .onTrue(
-            m_elevator
-                .setElevatorPosition(4)
-                .alongWith(m_coralIntake.setPivotPosition(5.1).withTimeout(1)));
+    m_operatorController.y().onTrue(superstructure.goTo(SuperstructureState.PIVOT_BACK));
 
     // when the A button is held down, the elevator is set to level 0 and the coral intake is set to
     // pivot position 0
-    m_operatorController
-        .a()
-        .onTrue(
-            m_elevator
-                .setElevatorPosition(ElevatorConstants.kElevatorLevel2 + 0.5)
-                .alongWith(m_coralIntake.turntoNeutral())
-                .alongWith(m_algaeIntake.turntoNeutral()));
+    m_operatorController.a().onTrue(superstructure.goTo(SuperstructureState.ABOVE_L2));
 
     // when the left bumper is held down, the algae intake motor spins to intake the algae
     m_operatorController.leftBumper().whileTrue(m_algaeIntake.intakeAlgae());
@@ -208,16 +210,31 @@ public class RobotContainer {
     // when the right bumper is held down, the algae intake motor spins to outtake the algae
     m_operatorController.rightBumper().whileTrue(m_algaeIntake.outtakeAlgae());
 
-    // when the left trigger is held down, the coral intake motor spins to intake the coral
+    // when the left trigger is held down, the coral intake motor spins to intake the coral and
+    // the limelights only look for the coral station tags
     m_operatorController.leftTrigger().whileTrue(m_coralIntake.intakeCoral());
+    m_operatorController.leftTrigger().whileTrue(drive.withStationVision(Commands.idle()));
 
     // when the right trigger is held down, the coral intake motor spins to outtake the coral
     m_operatorController.rightTrigger().whileTrue(m_coralIntake.outtakeCoral());
 
+    // After intaking the robot heads to the reef and after scoring to a coral station, so the
+    // paths there can be prefetched
+    m_operatorController
+        .leftTrigger()
+        .onFalse(Commands.runOnce(() -> drive.setNextTask(NextTask.SCORE)));
+    m_operatorController
+        .rightTrigger()
+        .onFalse(Commands.runOnce(() -> drive.setNextTask(NextTask.INTAKE)));
+
     Dcontroller.a().whileTrue(m_climber.climbDown());
     Dcontroller.y().whileTrue(m_climber.climbUp());
 
-    // Dcontroller.x().onTrue(drive.alignToReef());
+    // when the X button is held down, the robot aligns to the closest reef position while the
+    // elevator and coral pivot get ready to score on level 4
+    Dcontroller
+        .x()
+        .whileTrue(ScoringCoordinator.alignAndScore(drive, superstructure, SuperstructureState.L4));
     // Dcontroller.b().onTrue(drive.alignToReef());
 
     // when the start button (button with the 3 lines) is held down, the coral pivot motor spins to
@@ -241,45 +258,6 @@ public class RobotContainer {
     // sets the pivot position for intaking the coral from the player position
     m_operatorController.x().onTrue(m_coralIntake.setPivotPosition(4.5));
   }
-  // sequantial command group for level 0 sco(ring, scores the corala and then brings elevator back
-  // to 0
-
-  SequentialCommandGroup L1 =
-      new SequentialCommandGroup(
-          m_elevator.elevatorToLevel1().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)
-          // m_coralIntake.outtakeCoral().withTimeout(1.5),
-          // m_elevator.resetElevatorPosition()
-          );
-
-  // sequantial command group for level 1 scoring, scores the corala and then brings elevator back
-  // to 0
-  SequentialCommandGroup L2 =
-      new SequentialCommandGroup(
-          m_elevator.elevatorToLevel2().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)
-          // m_coralIntake.outtakeCoral().withTimeout(1.5),
-          // m_elevator.resetElevatorPosition()
-          );
-
-  // sequantial command group for level 2 scoring, scores the corala and then brings elevator back
-  // to 0
-  SequentialCommandGroup L3 =
-      new SequentialCommandGroup(
-          m_elevator.elevatorToLevel3().alongWith(m_coralIntake.turntoNeutral()).withTimeout(1)
-          // m_coralIntake.outtakeCoral().withTimeout(1.5),
-          // m_elevator.resetElevatorPosition()
-          );
-
-  // sequantial command group for level 3 scoring, scores the corala and then brings elevator back
-  // to 0
-  SequentialCommandGroup L4 =
-      new SequentialCommandGroup(
-          m_elevator
-              .elevatorToLevel4()
-              .alongWith(m_coralIntake.setPivotPosition(2.8))
-              .withTimeout(1)
-          // m_coralIntake.outtakeCoral().withTimeout(1.5),
-          // m_elevator.resetElevatorPosition()
-          );
 
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
@@ -287,6 +265,7 @@ public class RobotContainer {
    * @return the command to run in autonomous
    */
   public Command getAutonomousCommand() {
-    return autoChooser.get();
+    // Homing starts on enable, the auto needs exact heights so wait for it to finish first
+    return Commands.waitUntil(m_elevator::hasFinishedHoming).andThen(autoChooser.get().asProxy());
   }
 }
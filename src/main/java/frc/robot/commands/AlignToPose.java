@@ -5,15 +5,22 @@ import static frc.robot.subsystems.drive.DriveConstants.alignSpeed;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.drive.Drive;
 import frc.robot.subsystems.drive.DriveConstants;
+import frc.robot.util.JerkLimitedProfile;
 import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
 
 /** A command that aligns the robot to a certain field-relative position */
 public class AlignToPose extends Command {
-  // This command works by using a simple PID loop to move x/y positions and rotate angle
+  // This command works by following a jerk-limited profile along the straight line to the target,
+  // with a heading profile that arrives at the same time, and PID loops on x/y and angle to correct
+  // errors from the profile
   private PIDController xPidController, yPidController, thetaPidController;
   private double xP, xI, xD;
   private double yP, yI, yD;
@@ -23,6 +30,12 @@ public class AlignToPose extends Command {
   private Drive drive;
   private boolean isAuto;
 
+  private final Timer timer = new Timer();
+  private Pose2d startPose;
+  private Translation2d direction; // Unit vector from the start to the target
+  private double headingSign; // Which way to turn
+  private JerkLimitedProfile translationProfile, headingProfile;
+
   /**
    * A command that aligns the robot to a certain field-relative position
    *
@@ -56,28 +69,78 @@ public class AlignToPose extends Command {
   public void initialize() {
     // Sets position once at start of command
     targetPose = targetPoseSupplier.get();
+    startPose = drive.getPose();
 
     // Resets state and integral term of PID controllers
     xPidController.reset();
     yPidController.reset();
     thetaPidController.reset();
 
-    // Set the setpoints once at the start of the command
-    // Prevents rapidly oscillating movement by going to only 1 setpoint at a time
-    xPidController.setSetpoint(targetPoseSupplier.get().getX());
-    yPidController.setSetpoint(targetPoseSupplier.get().getY());
-    thetaPidController.setSetpoint(targetPoseSupplier.get().getRotation().getRadians());
+    // Straight line to the target, starting with however fast we already move along it
+    Translation2d toTarget = targetPose.getTranslation().minus(startPose.getTranslation());
+    double distance = toTarget.getNorm();
+    direction = distance > 1e-6 ? toTarget.div(distance) : new Translation2d();
+    ChassisSpeeds speeds = drive.getFieldRelativeSpeeds();
+    double speedAlongLine =
+        speeds.vxMetersPerSecond * direction.getX() + speeds.vyMetersPerSecond * direction.getY();
+
+    double headingChange = targetPose.getRotation().minus(startPose.getRotation()).getRadians();
+    headingSign = Math.signum(headingChange);
+    double turnRate = speeds.omegaRadiansPerSecond * headingSign;
+
+    // Slow down whichever profile is faster so the robot reaches the position and heading together
+    translationProfile =
+        new JerkLimitedProfile(
+            distance,
+            speedAlongLine,
+            alignSpeed,
+            DriveConstants.alignAcceleration,
+            DriveConstants.alignJerk);
+    headingProfile =
+        JerkLimitedProfile.withMinimumTime(
+            Math.abs(headingChange),
+            turnRate,
+            DriveConstants.alignAngularSpeed,
+            DriveConstants.alignAngularAcceleration,
+            DriveConstants.alignAngularJerk,
+            translationProfile.totalTime());
+    if (headingProfile.totalTime() > translationProfile.totalTime()) {
+      translationProfile =
+          JerkLimitedProfile.withMinimumTime(
+              distance,
+              speedAlongLine,
+              alignSpeed,
+              DriveConstants.alignAcceleration,
+              DriveConstants.alignJerk,
+              headingProfile.totalTime());
+    }
+
+    timer.restart();
   }
 
   @Override
   public void execute() {
-    Pose2d currentPose = drive.getPose();
-
-    // Field-relative PID calculations for how much to move in x and y directions
+    // Close the loop on where the robot will be once these speeds take effect
+    Pose2d currentPose = drive.getPredictedPose();
+
+    // Where the profiles say the robot should be right now
+    JerkLimitedProfile.State translation = translationProfile.sample(timer.get());
+    JerkLimitedProfile.State heading = headingProfile.sample(timer.get());
+    Translation2d setpoint = startPose.getTranslation().plus(direction.times(translation.position));
+    Rotation2d setpointHeading =
+        startPose.getRotation().plus(Rotation2d.fromRadians(headingSign * heading.position));
+    Logger.recordOutput("AlignToPose/Setpoint", new Pose2d(setpoint, setpointHeading));
+    Logger.recordOutput("AlignToPose/TimeRemaining", getTimeRemaining());
+
+    // Profile velocity plus field-relative PID corrections for how much to move in x and y
     double xOutput =
-        xPidController.calculate(currentPose.getX()) * DriveConstants.maxSpeedMetersPerSec;
+        direction.getX() * translation.velocity
+            + xPidController.calculate(currentPose.getX(), setpoint.getX())
+                * DriveConstants.maxSpeedMetersPerSec;
     double yOutput =
-        yPidController.calculate(currentPose.getY()) * DriveConstants.maxSpeedMetersPerSec;
+        direction.getY() * translation.velocity
+            + yPidController.calculate(currentPose.getY(), setpoint.getY())
+                * DriveConstants.maxSpeedMetersPerSec;
 
     // Normalize x and y velocity vectors
     // if they want the robot to move faster than our constraint says it can
@@ -93,11 +156,13 @@ public class AlignToPose extends Command {
       yOutput = 0;
     }
 
-    // PID calculation for how much to turn
+    // Profile turn rate plus PID correction for how much to turn
     double thetaOutput =
         MathUtil.clamp(
-            thetaPidController.calculate(currentPose.getRotation().getRadians())
-                * drive.getMaxAngularSpeedRadPerSec(),
+            headingSign * heading.velocity
+                + thetaPidController.calculate(
+                        currentPose.getRotation().getRadians(), setpointHeading.getRadians())
+                    * drive.getMaxAngularSpeedRadPerSec(),
             -DriveConstants.alignAngularSpeed,
             DriveConstants.alignAngularSpeed);
 
@@ -108,6 +173,17 @@ public class AlignToPose extends Command {
     drive.runVelocity(driveSpeeds);
   }
 
+  /**
+   * Estimates how long until the robot settles on the target, from the profiles it is following.
+   *
+   * @return The time left in seconds, infinite if the command hasn't started
+   */
+  public double getTimeRemaining() {
+    if (translationProfile == null) return Double.POSITIVE_INFINITY;
+    double totalTime = Math.max(translationProfile.totalTime(), headingProfile.totalTime());
+    return Math.max(0, totalTime - timer.get());
+  }
+
   @Override
   public boolean isFinished() {
     if (isAuto) {
@@ -0,0 +1,51 @@
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.subsystems.drive.Drive;
+import frc.robot.subsystems.superstructure.Superstructure;
+import frc.robot.subsystems.superstructure.SuperstructureState;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Overlaps aligning to the reef with getting the superstructure into scoring position. The time
+ * left on the alignment profile is compared against how long the superstructure takes to move,
+ * and it is started just early enough to arrive when the drivetrain settles, instead of waiting
+ * for the alignment to finish first.
+ */
+public class ScoringCoordinator {
+  // Starts the mechanisms a little earlier than estimated to cover errors in the estimates
+  private static final double kTriggerMarginSeconds = 0.1;
+
+  private ScoringCoordinator() {}
+
+  /**
+   * Aligns to the closest reef position and moves the superstructure so everything arrives
+   * together. Finishes once the robot is aligned and the superstructure is in place.
+   *
+   * @param drive The drivetrain
+   * @param superstructure The elevator and pivots
+   * @param goal Where the superstructure should be to score
+   */
+  public static Command alignAndScore(
+      Drive drive, Superstructure superstructure, SuperstructureState goal) {
+    AlignToPose alignment = new AlignToPose(drive, drive::getClosestReefPose, true);
+
+    Command startSuperstructure =
+        Commands.waitUntil(() -> shouldStart(alignment, superstructure, goal))
+            .andThen(superstructure.goTo(goal));
+
+    // If the estimate was off the superstructure keeps going after the drivetrain settles
+    return Commands.deadline(drive.withReefVision(alignment), startSuperstructure)
+        .andThen(superstructure.goTo(goal))
+        .withName("AlignAndScore");
+  }
+
+  // Whether the superstructure needs to start now to arrive by the end of the alignment
+  private static boolean shouldStart(
+      AlignToPose alignment, Superstructure superstructure, SuperstructureState goal) {
+    double leadTime = superstructure.getTimeToReach(goal) + kTriggerMarginSeconds;
+    Logger.recordOutput("ScoringCoordinator/LeadTime", leadTime);
+    return alignment.getTimeRemaining() <= leadTime;
+  }
+}
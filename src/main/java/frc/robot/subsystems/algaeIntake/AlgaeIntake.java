@@ -69,6 +69,24 @@ public class AlgaeIntake extends SubsystemBase {
     return run(() -> intake.setPivotSpeed(0));
   }
 
+  public void movePivot(double position) {
+    intake.setPivotPosition(position);
+  }
+
+  public double getPivotPosition() {
+    return intake.getPivotPosition();
+  }
+
+  /** Estimates how long the pivot takes to turn from where it is to a position, in seconds. */
+  public double getTimeToReach(double position) {
+    return Math.abs(position - intake.getPivotPosition())
+        / AlgaeIntakeConstants.kPivotEstimatedSpeed;
+  }
+
+  public boolean isPivotAt(double position) {
+    return Math.abs(intake.getPivotPosition() - position) <= AlgaeIntakeConstants.kPivotTolerance;
+  }
+
   @Override
   public void periodic() {
     SmartDashboard.putNumber(
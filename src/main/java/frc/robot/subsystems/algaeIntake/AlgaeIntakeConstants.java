@@ -13,6 +13,9 @@ public class AlgaeIntakeConstants {
   public static final double kPivotNeutalPosition = -3.3;
   public static final double kPivotZeroPosition = 0.0;
   public static final double kPivotMinPosition = -7.0;
+  // Rough pivot speed in rotations per second, for timing moves
+  public static final double kPivotEstimatedSpeed = 6.0;
+  public static final double kPivotTolerance = 0.1;
 
   public static final double kP = 0.07;
   public static final double kI = 0.0;
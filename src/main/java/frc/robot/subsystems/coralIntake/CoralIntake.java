@@ -59,6 +59,24 @@ public class CoralIntake extends SubsystemBase {
     return run(() -> intake.setPivotPosition(position));
   }
 
+  public void movePivot(double position) {
+    intake.setPivotPosition(position);
+  }
+
+  public double getPivotPosition() {
+    return intake.getPivotPosition();
+  }
+
+  /** Estimates how long the pivot takes to turn from where it is to a position, in seconds. */
+  public double getTimeToReach(double position) {
+    return Math.abs(position - intake.getPivotPosition())
+        / CoralIntakeConstants.kPivotEstimatedSpeed;
+  }
+
+  public boolean isPivotAt(double position) {
+    return Math.abs(intake.getPivotPosition() - position) <= CoralIntakeConstants.kPivotTolerance;
+  }
+
   @Override
   public void periodic() {
     SmartDashboard.putNumber(
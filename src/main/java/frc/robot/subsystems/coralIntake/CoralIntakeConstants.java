@@ -12,6 +12,9 @@ public class CoralIntakeConstants {
   public static final double kPivotMaxPosition = 4.5;
   public static final double kPivotNeutalPosition = 3.7;
   public static final double kPivotMinPosition = 0.0;
+  // Rough pivot speed in rotations per second, for timing moves
+  public static final double kPivotEstimatedSpeed = 6.0;
+  public static final double kPivotTolerance = 0.1;
 
   public static final double kP = 0.1;
   public static final double kI = 0.0;
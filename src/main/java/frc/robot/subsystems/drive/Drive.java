@@ -29,7 +29,6 @@ import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
@@ -39,22 +38,31 @@ import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import frc.robot.Constants;
 import frc.robot.Constants.*;
 import frc.robot.Constants.Mode;
-import frc.robot.FieldConstants;
 import frc.robot.commands.AlignToPose;
 import frc.robot.commands.DriveCommands;
+import frc.robot.subsystems.vision.LimelightCropPredictor;
 import frc.robot.subsystems.vision.LimelightHelpers;
+import frc.robot.subsystems.vision.LimelightTagPolicy;
+import frc.robot.subsystems.vision.VisionGate;
 import frc.robot.subsystems.vision.VisionIOInputsAutoLogged;
 import frc.robot.util.AllianceFlipUtil;
+import frc.robot.util.AnytimePathfinder;
+import frc.robot.util.FieldTargetIndex;
+import frc.robot.util.FieldTargetIndex.TargetType;
+import frc.robot.util.GoalDistanceFields;
 import frc.robot.util.LocalADStarAK;
+import frc.robot.util.PathPrefetcher;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.littletonrobotics.junction.AutoLogOutput;
@@ -72,6 +80,14 @@ public class Drive extends SubsystemBase {
 
   // private final VisionIOLimelight visionIO;
   private final VisionIOInputsAutoLogged visionInputs = new VisionIOInputsAutoLogged();
+  private final VisionGate visionGate = new VisionGate();
+  private final LimelightCropPredictor limelightCrop = new LimelightCropPredictor();
+  private final LimelightTagPolicy limelightTagPolicy = new LimelightTagPolicy();
+  // Only started by the first drive-to-goal command, until then nothing needs prefetched paths
+  private PathPrefetcher pathPrefetcher = null;
+  private PathPrefetcher.NextTask nextTask = PathPrefetcher.NextTask.SCORE;
+  private final PosePredictor posePredictor = new PosePredictor();
+  private final FieldTargetIndex targetIndex = new FieldTargetIndex();
 
   private SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleTranslations);
   private Rotation2d rawGyroRotation = new Rotation2d();
@@ -132,9 +148,12 @@ public class Drive extends SubsystemBase {
         new PPHolonomicDriveController(
             new PIDConstants(5.0, 0.0, 0.0), new PIDConstants(5.0, 0.0, 0.0)),
         pathPlannerConfig,
-        () -> DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Red,
+        AllianceFlipUtil::shouldFlip,
         this);
-    Pathfinding.setPathfinder(new LocalADStarAK());
+    Pathfinding.setPathfinder(
+        useAnytimePathfinder
+            ? new AnytimePathfinder(pathfindingDeadlineSeconds)
+            : new LocalADStarAK());
     PathPlannerLogging.setLogActivePathCallback(
         (activePath) -> {
           Logger.recordOutput(
@@ -210,8 +229,23 @@ public class Drive extends SubsystemBase {
 
       // Apply update
       // poseEstimator.updateWithTime(Timer.getFPGATimestamp(), rawGyroRotation, modulePositions);
+      odometry.update(rawGyroRotation, modulePositions);
+      posePredictor.addOdometrySample(sampleTimestamps[i], getPose());
     }
 
+    // Crop the Limelights around where the tags should be and only search for the tags that
+    // matter right now to speed up detection
+    if (useVision) {
+      limelightCrop.update(Timer.getFPGATimestamp(), getPose());
+      limelightTagPolicy.update(getPose());
+    }
+
+    // Alignment targets only change with the alliance
+    targetIndex.update(AllianceFlipUtil.shouldFlip());
+
+    // Keep paths to the likely next goals ready so driving to them starts right away
+    if (pathPrefetcher != null) pathPrefetcher.update(AllianceFlipUtil.apply(getPose()));
+
     // Update gyro alert
     gyroDisconnectedAlert.set(!gyroInputs.connected && Constants.currentMode != Mode.SIM);
 
@@ -221,12 +255,18 @@ public class Drive extends SubsystemBase {
     // }
 
     // if (DriveConstants.useVision) {
+    //   // Keep a short pose history so delayed measurements can be checked against odometry
+    //   visionGate.addOdometrySample(Timer.getFPGATimestamp(), getPose());
     //   if (RobotBase.isSimulation()) {
     //     visionIO.updateInputs(visionInputs, getPose(), odometry.getPoseMeters());
     //   } else {
     //     visionIO.updateInputs(visionInputs, getPose(), rawGyroRotation);
     //   }
     //   Logger.processInputs("Vision", visionInputs);
+    //   if (Logger.hasReplaySource()) {
+    //     // Re-run the estimators from the logged raw results
+    //     visionIO.replayInputs(visionInputs, getPose(), rawGyroRotation);
+    //   }
     //   if (visionInputs.hasEstimate) {
     //     List<Matrix<N3, N1>> stdDeviations = visionIO.getStdArray(visionInputs, getPose());
 
@@ -235,12 +275,22 @@ public class Drive extends SubsystemBase {
     // estimate
     //       else if (stdDeviations.size() <= i || visionInputs.timestampArray.length <= i)
     //         continue; // Avoids index out of bounds exceptions
+    //       else if (!visionGate.test(
+    //           i, visionInputs.estimate[i], visionInputs.timestampArray[i],
+    //           stdDeviations.get(i)))
+    //         continue; // Outlier compared to odometry at the measurement time
     //       else {
     //         poseEstimator.addVisionMeasurement(
     //             visionInputs.estimate[i], visionInputs.timestampArray[i], stdDeviations.get(i));
     //       }
     //     }
     //   }
+    //   if (visionInputs.hasJointEstimate) {
+    //     // One solve over every camera's corners, trusted like a multi-tag estimate
+    //     poseEstimator.addVisionMeasurement(
+    //         visionInputs.jointEstimate, visionInputs.jointTimestamp, kMultiTagStdDevs);
+    //   }
+    //   visionGate.logCounts();
     // }
 
     SmartDashboard.putNumber("Gyro Yaw", getRotation().getDegrees());
@@ -358,58 +408,94 @@ public class Drive extends SubsystemBase {
    * @return
    */
   public Command alignToReef() {
-    return new AlignToPose(
-        this,
-        () -> {
-          Pose2d[] reefPoses = FieldConstants.ReefScoringPositions;
-          Pose2d currentPose = getPose();
+    return withReefVision(new AlignToPose(this, this::getClosestReefPose, false));
+  }
 
-          int closestPose = 0;
-          double closestDistance = Double.MAX_VALUE;
+  /**
+   * A command that automatically aligns to the closest reef position
+   *
+   * @return
+   */
+  public Command alignToReefAuto() {
+    return withReefVision(new AlignToPose(this, this::getClosestReefPose, true));
+  }
 
-          for (int i = 0; i < 12; i++) {
-            Transform2d currentToTarget = AllianceFlipUtil.apply(reefPoses[i]).minus(currentPose);
-            double distance = currentToTarget.getTranslation().getNorm();
+  /** Runs an alignment command with the limelights tracking only the reef tags. */
+  public Command withReefVision(Command alignment) {
+    return alignment
+        .beforeStarting(() -> setVisionTask(LimelightTagPolicy.Task.REEF_ALIGN))
+        .finallyDo(() -> setVisionTask(LimelightTagPolicy.Task.GENERAL));
+  }
 
-            if (distance < closestDistance) {
-              closestPose = i;
-              closestDistance = distance;
-            }
-          }
+  /** Runs a command with the limelights tracking only the coral station tags. */
+  public Command withStationVision(Command command) {
+    return command
+        .beforeStarting(() -> setVisionTask(LimelightTagPolicy.Task.CORAL_STATION))
+        .finallyDo(() -> setVisionTask(LimelightTagPolicy.Task.GENERAL));
+  }
 
-          return AllianceFlipUtil.apply(reefPoses[closestPose]);
-        },
-        false);
+  /** Returns the closest reef scoring position for our alliance. */
+  public Pose2d getClosestReefPose() {
+    return targetIndex.getPose(targetIndex.nearest(TargetType.REEF, getPose()));
   }
 
   /**
-   * A command that automatically aligns to the closest reef position
+   * A command that drives to a fixed goal. It starts right away on a prefetched path when there is
+   * one and falls back to pathfinding otherwise.
    *
-   * @return
+   * @param goal The goal index in {@link GoalDistanceFields#kGoals}
    */
-  public Command alignToReefAuto() {
-    return new AlignToPose(
-        this,
-        () -> {
-          Pose2d[] reefPoses = FieldConstants.ReefScoringPositions;
-          Pose2d currentPose = getPose();
+  public Command driveToGoal(int goal) {
+    return Commands.defer(() -> getDriveToGoalCommand(goal), Set.of(this));
+  }
 
-          int closestPose = 0;
-          double closestDistance = Double.MAX_VALUE;
+  /** A command that drives to the closest goal for what the robot will most likely do next. */
+  public Command driveToPredictedGoal() {
+    return Commands.defer(
+        () -> getDriveToGoalCommand(getPathPrefetcher().getPredictedGoal()), Set.of(this));
+  }
 
-          for (int i = 0; i < 12; i++) {
-            Transform2d currentToTarget = AllianceFlipUtil.apply(reefPoses[i]).minus(currentPose);
-            double distance = currentToTarget.getTranslation().getNorm();
+  private Command getDriveToGoalCommand(int goal) {
+    Command command =
+        getPathPrefetcher()
+            .getPath(goal, AllianceFlipUtil.apply(getPose()))
+            .map(AutoBuilder::followPath)
+            .orElseGet(
+                () ->
+                    AutoBuilder.pathfindToPoseFlipped(
+                        GoalDistanceFields.kGoalPoses[goal], pathfindingConstraints));
+    boolean isStation =
+        goal >= GoalDistanceFields.kFirstCoralStationGoal
+            && goal < GoalDistanceFields.kProcessorGoal;
+    return isStation ? withStationVision(command) : command;
+  }
 
-            if (distance < closestDistance) {
-              closestPose = i;
-              closestDistance = distance;
-            }
-          }
+  /**
+   * Tells the path prefetcher what the robot will do next, so it can have the paths ready.
+   *
+   * @param task The next task
+   */
+  public void setNextTask(PathPrefetcher.NextTask task) {
+    nextTask = task;
+    if (pathPrefetcher != null) pathPrefetcher.setNextTask(task);
+  }
 
-          return AllianceFlipUtil.apply(reefPoses[closestPose]);
-        },
-        true);
+  private PathPrefetcher getPathPrefetcher() {
+    if (pathPrefetcher == null) {
+      pathPrefetcher = new PathPrefetcher(pathfindingConstraints);
+      pathPrefetcher.setNextTask(nextTask);
+      pathPrefetcher.update(AllianceFlipUtil.apply(getPose()));
+    }
+    return pathPrefetcher;
+  }
+
+  /**
+   * Tells the Limelights what the robot is doing so they only search for the relevant tags.
+   *
+   * @param task The current task
+   */
+  public void setVisionTask(LimelightTagPolicy.Task task) {
+    limelightTagPolicy.setTask(task);
   }
 
   public void applySlowMode() {
@@ -516,6 +602,11 @@ public class Drive extends SubsystemBase {
     return kinematics.toChassisSpeeds(getModuleStates());
   }
 
+  /** Returns the measured chassis speeds of the robot, relative to the field. */
+  public ChassisSpeeds getFieldRelativeSpeeds() {
+    return ChassisSpeeds.fromRobotRelativeSpeeds(getChassisSpeeds(), getRotation());
+  }
+
   /** Returns the position of each module in radians. */
   public double[] getWheelRadiusCharacterizationPositions() {
     double[] values = new double[4];
@@ -540,6 +631,16 @@ public class Drive extends SubsystemBase {
     return odometry.getPoseMeters();
   }
 
+  /**
+   * Returns where the robot will be when a command sent now takes effect, extrapolated from the
+   * current pose by the odometry and actuation latency. Controllers should close the loop on this
+   * instead of {@link #getPose()}.
+   */
+  @AutoLogOutput(key = "Odometry/Predicted")
+  public Pose2d getPredictedPose() {
+    return posePredictor.predict(Timer.getFPGATimestamp(), getPose(), getChassisSpeeds());
+  }
+
   /** Returns the current odometry rotation. */
   public Rotation2d getRotation() {
     return gyroIO.getRotation2D();
@@ -558,6 +659,10 @@ public class Drive extends SubsystemBase {
     // don't
     // poseEstimator.resetPosition(rawGyroRotation, getModulePositions(), pose);
     odometry.resetPosition(rawGyroRotation, getModulePositions(), pose);
+    visionGate.reset();
+    limelightCrop.reset();
+    if (pathPrefetcher != null) pathPrefetcher.clear();
+    posePredictor.reset();
   }
 
   // /** Adds a new timestamped vision measurement. */
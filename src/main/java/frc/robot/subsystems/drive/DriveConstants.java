@@ -15,6 +15,7 @@ package frc.robot.subsystems.drive;
 
 import com.pathplanner.lib.config.ModuleConfig;
 import com.pathplanner.lib.config.RobotConfig;
+import com.pathplanner.lib.path.PathConstraints;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.system.plant.DCMotor;
@@ -25,6 +26,22 @@ public class DriveConstants {
   public static boolean useVision = false;
   public static final double alignSpeed = 3;
   public static final double alignAngularSpeed = 2.5 * Math.PI; // radians/second
+  // Alignment profile limits, the jerk limits keep the approach smooth
+  public static final double alignAcceleration = 4.0; // meters/second^2
+  public static final double alignJerk = 20.0; // meters/second^3
+  public static final double alignAngularAcceleration = 4 * Math.PI; // radians/second^2
+  public static final double alignAngularJerk = 20 * Math.PI; // radians/second^3
+
+  // Pathfinding, LocalADStar with the goal distance fields unless useAnytimePathfinder is set. The
+  // anytime pathfinder usually has a first path within the deadline and refines it afterwards
+  public static final boolean useAnytimePathfinder = false;
+  public static final double pathfindingDeadlineSeconds = 0.02;
+  public static final PathConstraints pathfindingConstraints =
+      new PathConstraints(3.0, 3.0, Units.degreesToRadians(540), Units.degreesToRadians(720));
+
+  // Time from sending a velocity command to the wheels following it, measured from the delay
+  // between SwerveChassisSpeeds/Setpoints and SwerveChassisSpeeds/Measured in logs
+  public static final double actuationLatencySeconds = 0.04;
 
   public static final double maxSpeedMetersPerSec = 4;
   public static final double odometryFrequency = 100.0; // Hz
@@ -103,7 +120,7 @@ public class DriveConstants {
   public static final double turnPIDMinInput = 0; // Radians
   public static final double turnPIDMaxInput = 2 * Math.PI; // Radians
 
-  // Align PID configuration
+  // Align PID configuration, corrects errors from the alignment profile
   public static final double kAlignPositionTolerance = 0.03;
 
   public static final double kTurnAngleP = 0.4;
@@ -0,0 +1,74 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.actuationLatencySeconds;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * Predicts where the robot will be when a command sent now takes effect. The latest odometry
+ * sample is already old by the time it is read, and a velocity command takes a while to reach the
+ * wheels, so controllers closing the loop on the latest pose react late and oscillate at high
+ * gains. The pose is extrapolated forward by both delays using the velocity over the last few
+ * odometry samples.
+ */
+public class PosePredictor {
+  private static final double kHistorySeconds = 0.5;
+  private static final double kVelocityWindowSeconds = 0.06; // Averages out encoder noise
+
+  private final TimeInterpolatableBuffer<Pose2d> history =
+      TimeInterpolatableBuffer.createBuffer(kHistorySeconds);
+  private Pose2d latestPose = null;
+  private double latestTimestamp = 0;
+
+  /**
+   * Records an odometry pose.
+   *
+   * @param timestamp The FPGA timestamp of the sample in seconds
+   * @param pose The odometry pose at that time
+   */
+  public void addOdometrySample(double timestamp, Pose2d pose) {
+    history.addSample(timestamp, pose);
+    latestPose = pose;
+    latestTimestamp = timestamp;
+  }
+
+  /** Clears the history, should be called whenever the pose is reset. */
+  public void reset() {
+    history.clear();
+    latestPose = null;
+  }
+
+  /**
+   * Predicts the pose once a command sent now takes effect.
+   *
+   * @param timestamp The current FPGA timestamp in seconds
+   * @param currentPose The current pose, returned as is when there is no history yet
+   * @param measuredSpeeds The measured robot-relative speeds, used when the history is too short
+   *     to get a velocity from
+   */
+  public Pose2d predict(double timestamp, Pose2d currentPose, ChassisSpeeds measuredSpeeds) {
+    if (latestPose == null) return currentPose;
+
+    // Velocity from the odometry history, it matches the poses better than the wheel speeds
+    Twist2d velocity =
+        new Twist2d(
+            measuredSpeeds.vxMetersPerSecond,
+            measuredSpeeds.vyMetersPerSecond,
+            measuredSpeeds.omegaRadiansPerSecond);
+    double oldestTimestamp = history.getInternalBuffer().firstKey();
+    if (oldestTimestamp < latestTimestamp) {
+      // Right after a reset the window is however much history there is
+      double window = Math.min(kVelocityWindowSeconds, latestTimestamp - oldestTimestamp);
+      Pose2d olderPose = history.getSample(latestTimestamp - window).orElse(latestPose);
+      Twist2d change = olderPose.log(latestPose);
+      velocity = new Twist2d(change.dx / window, change.dy / window, change.dtheta / window);
+    }
+
+    double horizon = Math.max(0, timestamp - latestTimestamp) + actuationLatencySeconds;
+    return latestPose.exp(
+        new Twist2d(velocity.dx * horizon, velocity.dy * horizon, velocity.dtheta * horizon));
+  }
+}
@@ -1,34 +1,62 @@
 package frc.robot.subsystems.elevator;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import static edu.wpi.first.units.Units.*;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import org.littletonrobotics.junction.Logger;
 
 public class Elevator extends SubsystemBase {
   private final ElevatorIO elevator;
+  private final ElevatorIOInputsAutoLogged inputs = new ElevatorIOInputsAutoLogged();
+  private final TrapezoidProfile travelProfile =
+      new TrapezoidProfile(
+          new TrapezoidProfile.Constraints(
+              ElevatorConstants.kMaxVelocity, ElevatorConstants.kMaxAcceleration));
+  private final Debouncer stallDebouncer =
+      new Debouncer(ElevatorConstants.kHomingDebounceSeconds, Debouncer.DebounceType.kRising);
+  private boolean homed = false;
+  private boolean homingAttempted = false;
+  private boolean homing = false;
+  private double homingPeakCurrent = 0;
+  private final SysIdRoutine sysId;
 
   public Elevator(ElevatorIO elevator) {
     this.elevator = elevator;
+
+    // Configure SysId, the position, velocity and voltage come from the logged inputs
+    sysId =
+        new SysIdRoutine(
+            new SysIdRoutine.Config(
+                Volts.per(Second).of(ElevatorConstants.kSysIdRampVoltsPerSec),
+                Volts.of(ElevatorConstants.kSysIdStepVolts),
+                Seconds.of(ElevatorConstants.kSysIdTimeoutSeconds),
+                (state) -> Logger.recordOutput("Elevator/SysIdState", state.toString())),
+            new SysIdRoutine.Mechanism(
+                (voltage) -> elevator.setVoltage(voltage.in(Volts)), null, this));
   }
 
   // Moves the elevator up to Level 0
   public Command elevatorToLevel1() {
-    return run(() -> elevator.setElevatorPosition(ElevatorConstants.kElevatorLevel1));
+    return run(() -> moveToHeight(ElevatorConstants.kElevatorLevel1));
   }
 
   // Moves the elevator up to Level 1
   public Command elevatorToLevel2() {
-    return run(() -> elevator.setElevatorPosition(ElevatorConstants.kElevatorLevel2));
+    return run(() -> moveToHeight(ElevatorConstants.kElevatorLevel2));
   }
 
   // Moves the elevator up to Level 2
   public Command elevatorToLevel3() {
-    return run(() -> elevator.setElevatorPosition(ElevatorConstants.kElevatorLevel3));
+    return run(() -> moveToHeight(ElevatorConstants.kElevatorLevel3));
   }
 
   // Moves the elevator up to Level 3
   public Command elevatorToLevel4() {
-    return run(() -> elevator.setElevatorPosition(ElevatorConstants.kElevatorLevel4));
+    return run(() -> moveToHeight(ElevatorConstants.kElevatorLevel4));
   }
 
   // Moves the elevator up at the specified speed
@@ -47,7 +75,7 @@ public class Elevator extends SubsystemBase {
 
   // Sets the elevator to a specific position
   public Command setElevatorPosition(double position) {
-    return run(() -> elevator.setElevatorPosition(position));
+    return run(() -> moveToHeight(position));
   }
 
   // Stops the elevator movement
@@ -55,25 +83,125 @@ public class Elevator extends SubsystemBase {
     return run(() -> elevator.elevatorStop());
   }
 
-  // Resets the elevator position to zero
+  // Resets the elevator position to zero by homing it
   public Command resetElevatorPosition() {
-    return run(() -> elevator.setElevatorPosition(0.5));
+    return home();
   }
-  // Gets the current position of the elevator to put on SmartDashboard
-  @Override
-  public void periodic() {
-    SmartDashboard.putNumber("Elevator Position", elevator.getElevatorPosition());
 
-    // SmartDashboard.putNumber("Left voltage", elevator.getLvoltage());
-    // SmartDashboard.putNumber("Right voltage", elevator.getRvoltage());
+  /**
+   * Drives the elevator down slowly until it stops on the hard stop, then zeroes the encoder there.
+   * Stops without zeroing if the hard stop isn't found in time.
+   */
+  public Command home() {
+    return runOnce(
+            () -> {
+              stallDebouncer.calculate(false);
+              homingAttempted = true;
+              homing = true;
+              homingPeakCurrent = 0;
+            })
+        .andThen(
+            run(() -> elevator.setVoltage(ElevatorConstants.kHomingVoltage))
+                .until(() -> stallDebouncer.calculate(isAtHardStop())))
+        .andThen(
+            runOnce(
+                () -> {
+                  elevator.resetElevator();
+                  homed = true;
+                }))
+        .withTimeout(ElevatorConstants.kHomingTimeoutSeconds)
+        .finallyDo(
+            () -> {
+              elevator.setVoltage(0);
+              homing = false;
+            })
+        .withName("HomeElevator");
+  }
+
+  // Whether the elevator has been zeroed on the hard stop since the robot started
+  public boolean isHomed() {
+    return homed;
+  }
 
-    // SmartDashboard.putNumber("Left current", elevator.getLcurrent());
-    // SmartDashboard.putNumber("Right current", elevator.getRcurrent());
+  // Whether homing has been tried since the robot started, even if it didn't find the hard stop
+  public boolean hasAttemptedHoming() {
+    return homingAttempted;
+  }
 
-    SmartDashboard.putNumber("Left output", elevator.getLoutput());
-    SmartDashboard.putNumber("Right output", elevator.getLoutput());
+  // Whether homing has been tried and is over, so the encoder won't be zeroed under a move
+  public boolean hasFinishedHoming() {
+    return homingAttempted && !homing;
+  }
+
+  // Stalled against the bottom, pushing hard without moving
+  private boolean isAtHardStop() {
+    if (inputs.limitSwitchPressed) return true;
+    double current = 0;
+    for (double motorCurrent : inputs.motorCurrent) current = Math.max(current, motorCurrent);
+
+    // The peak shows what a real stall draws, to check the threshold against
+    homingPeakCurrent = Math.max(homingPeakCurrent, current);
+    Logger.recordOutput("Elevator/Homing/PeakCurrent", homingPeakCurrent);
+    Logger.recordOutput("Elevator/Homing/StallCurrent", ElevatorConstants.kHomingStallCurrent);
+    return current >= ElevatorConstants.kHomingStallCurrent
+        && Math.abs(inputs.velocityMetersPerSec) <= ElevatorConstants.kHomingStallVelocity;
+  }
+
+  // Moves the elevator towards a height, should be called every loop
+  public void moveToHeight(double height) {
+    elevator.setElevatorPosition(height, inputs.positionMeters, inputs.velocityMetersPerSec);
+  }
+
+  // Holds the elevator at a height once a move has finished
+  public void holdHeight(double height) {
+    elevator.holdPosition(height);
+  }
 
-    SmartDashboard.putNumber("Left temp", elevator.getLtemp());
-    SmartDashboard.putNumber("Right temp", elevator.getRtemp());
+  // Gets the current height of the elevator
+  public double getHeight() {
+    return inputs.positionMeters;
+  }
+
+  /**
+   * Estimates how long the elevator takes to move from where it is to a height.
+   *
+   * @param height The height to move to
+   * @return The time in seconds
+   */
+  public double getTimeToReach(double height) {
+    travelProfile.calculate(
+        0,
+        new TrapezoidProfile.State(inputs.positionMeters, inputs.velocityMetersPerSec),
+        new TrapezoidProfile.State(height, 0));
+    return travelProfile.totalTime();
+  }
+
+  // Whether the elevator is close enough to a height to score
+  public boolean isAtHeight(double height) {
+    return Math.abs(inputs.positionMeters - height) <= ElevatorConstants.kHeightTolerance;
+  }
+
+  /** Returns a command to run a quasistatic test in the specified direction. */
+  public Command sysIdQuasistatic(SysIdRoutine.Direction direction) {
+    return sysId.quasistatic(direction).until(() -> isPastSysIdLimit(direction));
+  }
+
+  /** Returns a command to run a dynamic test in the specified direction. */
+  public Command sysIdDynamic(SysIdRoutine.Direction direction) {
+    return sysId.dynamic(direction).until(() -> isPastSysIdLimit(direction));
+  }
+
+  // Stops a SysId run before the carriage reaches the end it is heading for
+  private boolean isPastSysIdLimit(SysIdRoutine.Direction direction) {
+    return direction == SysIdRoutine.Direction.kForward
+        ? inputs.positionMeters >= ElevatorConstants.kSysIdMaxHeight
+        : inputs.positionMeters <= ElevatorConstants.kSysIdMinHeight;
+  }
+
+  @Override
+  public void periodic() {
+    elevator.updateInputs(inputs);
+    Logger.processInputs("Elevator", inputs);
+    Logger.recordOutput("Elevator/Homed", homed);
   }
 }
@@ -1,13 +1,15 @@
 package frc.robot.subsystems.elevator;
 
-import edu.wpi.first.math.controller.ElevatorFeedforward;
+import edu.wpi.first.math.system.plant.DCMotor;
 
 public class ElevatorConstants {
   public static final double kElevatorUpSpeed = 0.5;
   public static final double kElevatorDownSpeed = -0.01;
 
-  public static final double kMaxVelocity = 2.0;
-  public static final double kMaxAcceleration = 2.0;
+  // In motor rotations like the encoder, about how fast the real elevator climbs to L4
+  public static final double kMaxVelocity = 40.0;
+  public static final double kMaxAcceleration = 80.0;
+  public static final double kHeightTolerance = 0.5;
 
   public static final int kElevatorLeftMotorID = 10;
   public static final int kElevatorRightMotorID = 11;
@@ -23,10 +25,47 @@ public class ElevatorConstants {
   public static final double kP = 0.07;
   public static final double kI = 0.0;
   public static final double kD = 0.0;
-  public static final double kFF = new ElevatorFeedforward(0.1, 1.3, 0.6, 0.05).calculate(0);
+  // Feedforward in volts, per motor rotation like the profile. kV comes from the NEO free speed
+  public static final double kS = 0.1;
+  public static final double kG = 1.3;
+  public static final double kV = 0.12;
+  public static final double kA = 0.01;
   public static final double kMinOutput = -1.0;
   public static final double kMaxOutput = 1.0;
 
+  // Gains by carriage height, one row per stage starting at that height. Feedforward is
+  // interpolated between rows and each row's PID gains get their own Spark closed loop slot (up to
+  // 4). All rows start out with the gains above until each stage is characterized with SysId
+  public static final double[] kScheduleHeights = {
+    kElevatorLevel1, kElevatorLevel3, kElevatorLevel4
+  };
+  // {kS, kG, kV, kA} for each row
+  public static final double[][] kScheduleFF = {
+    {kS, kG, kV, kA}, {kS, kG, kV, kA}, {kS, kG, kV, kA}
+  };
+  // {kP, kI, kD} for each row
+  public static final double[][] kSchedulePID = {{kP, kI, kD}, {kP, kI, kD}, {kP, kI, kD}};
+
+  // SysId ramps and steps the voltage, stopping short of either end of travel
+  public static final double kSysIdRampVoltsPerSec = 0.5;
+  public static final double kSysIdStepVolts = 4.0;
+  public static final double kSysIdTimeoutSeconds = 5.0;
+  public static final double kSysIdMinHeight = 2.0;
+  public static final double kSysIdMaxHeight = 26.0;
+
+  // Homing drives down gently until the carriage stalls on the hard stop or hits the limit switch
+  public static final double kHomingVoltage = -1.0;
+  // A stalled NEO draws its stall current scaled by the applied voltage, about 8.75 A at 1 V.
+  // Counting 60% of that as stalled leaves room for friction and the follower taking some load
+  public static final double kHomingStallCurrent =
+      0.6
+          * DCMotor.getNEO(1).stallCurrentAmps
+          * Math.abs(kHomingVoltage)
+          / DCMotor.getNEO(1).nominalVoltageVolts; // amps
+  public static final double kHomingStallVelocity = 0.5; // rotations per second
+  public static final double kHomingDebounceSeconds = 0.25; // Ignores the current spike at start
+  public static final double kHomingTimeoutSeconds = 4.0;
+
   public static final double kElevatorVoltage = 2; // for static routine testing
   // output up = 1.1
   // output down = 1
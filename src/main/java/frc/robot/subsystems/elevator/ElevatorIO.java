@@ -31,11 +31,24 @@ public interface ElevatorIO {
   public void elevatorDown(double speed);
 
   /**
-   * Sets the elevator motors to a specific position.
+   * Sets the elevator motors to a specific position. A new motion profile starts from the measured
+   * state, so pass the logged inputs to start the same way in replay.
    *
    * @param position The position to set the motors to.
+   * @param measuredPosition The measured position, in meters
+   * @param measuredVelocity The measured velocity, in meters per second
    */
-  public void setElevatorPosition(double position);
+  public void setElevatorPosition(
+      double position, double measuredPosition, double measuredVelocity);
+
+  /**
+   * Holds the elevator at a position after a move, feeding forward only what holds it up.
+   *
+   * @param position The position to hold
+   */
+  public default void holdPosition(double position) {
+    setElevatorPosition(position, position, 0);
+  }
 
   /** Stops the elevator motors. */
   public void elevatorStop();
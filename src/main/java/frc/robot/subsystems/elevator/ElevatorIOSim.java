@@ -5,7 +5,6 @@ import edu.wpi.first.math.controller.ElevatorFeedforward;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.simulation.ElevatorSim;
 import frc.robot.subsystems.elevator.ElevatorConstants.ElevatorSimConstants;
 
@@ -23,11 +22,6 @@ public class ElevatorIOSim implements ElevatorIO {
 
   private double appliedVoltage = 0;
 
-  // These variables are used to find the acceleration of the PID setpoint (change in velocity /
-  // time = avg acceleration)
-  double lastSpeed = 0;
-  double lastTime = Timer.getFPGATimestamp();
-
   // Simulation classes help us simulate what's going on, including gravity.
   // This arm sim represents an arm that can travel from -75 degrees (rotated down
   // front)
@@ -59,17 +53,19 @@ public class ElevatorIOSim implements ElevatorIO {
             ElevatorSimConstants.kElevatorSimFF[0],
             ElevatorSimConstants.kElevatorSimFF[1],
             ElevatorSimConstants.kElevatorSimFF[2],
-            ElevatorSimConstants.kElevatorSimFF[3]);
+            ElevatorSimConstants.kElevatorSimFF[3],
+            m_controller.getPeriod());
   }
 
   @Override
   public void updateInputs(ElevatorIOInputs inputs) {
-    sim.update(0.02);
+    sim.update(m_controller.getPeriod());
     inputs.positionMeters = getPosition();
     inputs.velocityMetersPerSec = sim.getVelocityMetersPerSecond();
     inputs.motorCurrent = new double[] {sim.getCurrentDrawAmps()};
     inputs.setpointMeters = m_controller.getSetpoint().position;
     inputs.appliedVoltage = appliedVoltage;
+    inputs.limitSwitchPressed = sim.hasHitLowerLimit();
   }
 
   @Override
@@ -85,19 +81,15 @@ public class ElevatorIOSim implements ElevatorIO {
 
   @Override
   public void goToSetpoint() {
+    double lastVelocity = m_controller.getSetpoint().velocity;
     double pidOutput = m_controller.calculate(getPosition());
 
-    // change in velocity / change in time = acceleration
-    // Acceleration is used to calculate feedforward
-    double acceleration =
-        (m_controller.getSetpoint().velocity - lastSpeed) / (Timer.getFPGATimestamp() - lastTime);
-
-    double ffOutput = feedforward.calculate(m_controller.getSetpoint().velocity, acceleration);
+    // The profile steps by a fixed period, so the setpoint's change in velocity over one period is
+    // its exact acceleration, no matter how long the loop actually took
+    double ffOutput =
+        feedforward.calculateWithVelocities(lastVelocity, m_controller.getSetpoint().velocity);
 
     setVoltage(MathUtil.clamp(pidOutput + ffOutput, -12, 12));
-
-    lastSpeed = m_controller.getSetpoint().velocity;
-    lastTime = Timer.getFPGATimestamp();
   }
 
   @Override
@@ -204,7 +196,8 @@ public class ElevatorIOSim implements ElevatorIO {
   }
 
   @Override
-  public void setElevatorPosition(double position) {
+  public void setElevatorPosition(
+      double position, double measuredPosition, double measuredVelocity) {
     // TODO Auto-generated method stub
     throw new UnsupportedOperationException("Unimplemented method 'setElevatorPosition'");
   }
@@ -223,8 +216,7 @@ public class ElevatorIOSim implements ElevatorIO {
 
   @Override
   public void resetElevator() {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'resetElevator'");
+    // The simulated position is exact, so there is no encoder drift to zero out
   }
 
   @Override
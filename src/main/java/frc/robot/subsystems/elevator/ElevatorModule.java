@@ -1,5 +1,7 @@
 package frc.robot.subsystems.elevator;
 
+import static frc.robot.util.SparkUtil.*;
+
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.spark.ClosedLoopSlot;
 import com.revrobotics.spark.SparkBase.ControlType;
@@ -11,6 +13,11 @@ import com.revrobotics.spark.SparkMax;
 import com.revrobotics.spark.config.ClosedLoopConfig.FeedbackSensor;
 import com.revrobotics.spark.config.SparkBaseConfig.IdleMode;
 import com.revrobotics.spark.config.SparkMaxConfig;
+import edu.wpi.first.math.controller.ElevatorFeedforward;
+import edu.wpi.first.math.interpolation.InterpolatingDoubleTreeMap;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.function.DoubleSupplier;
 
 public class ElevatorModule implements ElevatorIO {
   private final SparkMax leftElevatorMotor;
@@ -22,7 +29,28 @@ public class ElevatorModule implements ElevatorIO {
   private final SparkClosedLoopController leftElevatorMotorController;
   private final SparkClosedLoopController rightElevatorMotorController;
 
-  public static double currentSetpoint = 0;
+  private static final double kDt = 0.02;
+  private static final ClosedLoopSlot[] kSlots = {
+    ClosedLoopSlot.kSlot0, ClosedLoopSlot.kSlot1, ClosedLoopSlot.kSlot2, ClosedLoopSlot.kSlot3
+  };
+  // The profile restarts from the measured state if it wasn't followed for this long
+  private static final double kProfileTimeoutSeconds = 0.1;
+
+  // Same profile and feedforward as the sim, the Spark only closes the loop on the setpoint
+  private final TrapezoidProfile profile =
+      new TrapezoidProfile(
+          new TrapezoidProfile.Constraints(
+              ElevatorConstants.kMaxVelocity, ElevatorConstants.kMaxAcceleration));
+  private final ElevatorFeedforward feedforward =
+      new ElevatorFeedforward(
+          ElevatorConstants.kS, ElevatorConstants.kG, ElevatorConstants.kV, ElevatorConstants.kA);
+  private TrapezoidProfile.State setpoint = new TrapezoidProfile.State();
+  private double lastProfileTime = Double.NEGATIVE_INFINITY;
+
+  // kS, kG, kV and kA by height, from the gain schedule
+  private final InterpolatingDoubleTreeMap[] feedforwardSchedule =
+      new InterpolatingDoubleTreeMap[4];
+  private int scheduleRow = 0;
 
   // private final double countsPerInch = 42.0;
   private final double gravityCompensation = 0.1; // Tune this value - usually between 0.05-0.2
@@ -43,10 +71,29 @@ public class ElevatorModule implements ElevatorIO {
     SparkMaxConfig Rconfig = new SparkMaxConfig();
 
     Lconfig.smartCurrentLimit(50).idleMode(IdleMode.kBrake);
-    Lconfig.closedLoop
-        .feedbackSensor(FeedbackSensor.kPrimaryEncoder)
-        .pidf(ElevatorConstants.kP, ElevatorConstants.kI, ElevatorConstants.kD, 0)
-        .outputRange(ElevatorConstants.kMinOutput, ElevatorConstants.kMaxOutput);
+    Lconfig.closedLoop.feedbackSensor(FeedbackSensor.kPrimaryEncoder);
+    // Each stage of the gain schedule gets its own slot
+    for (int row = 0; row < ElevatorConstants.kScheduleHeights.length; row++) {
+      double[] pid = ElevatorConstants.kSchedulePID[row];
+      Lconfig.closedLoop
+          .pid(pid[0], pid[1], pid[2], kSlots[row])
+          .outputRange(ElevatorConstants.kMinOutput, ElevatorConstants.kMaxOutput, kSlots[row]);
+    }
+    for (int gain = 0; gain < feedforwardSchedule.length; gain++) {
+      feedforwardSchedule[gain] = new InterpolatingDoubleTreeMap();
+      for (int row = 0; row < ElevatorConstants.kScheduleHeights.length; row++) {
+        feedforwardSchedule[gain].put(
+            ElevatorConstants.kScheduleHeights[row], ElevatorConstants.kScheduleFF[row][gain]);
+      }
+    }
+    Lconfig.signals
+        .primaryEncoderPositionAlwaysOn(true)
+        .primaryEncoderPositionPeriodMs(20)
+        .primaryEncoderVelocityAlwaysOn(true)
+        .primaryEncoderVelocityPeriodMs(20)
+        .appliedOutputPeriodMs(20)
+        .busVoltagePeriodMs(20)
+        .outputCurrentPeriodMs(20);
 
     Rconfig.smartCurrentLimit(50)
         .idleMode(IdleMode.kBrake)
@@ -77,7 +124,8 @@ public class ElevatorModule implements ElevatorIO {
   }
 
   @Override
-  public void setElevatorPosition(double position) {
+  public void setElevatorPosition(
+      double position, double measuredPosition, double measuredVelocity) {
 
     // double pidOutput = pid.calculate(getElevatorPosition(), position);
     // // Add gravity compensation
@@ -89,9 +137,22 @@ public class ElevatorModule implements ElevatorIO {
     // motorOutput = Math.min(Math.max(motorOutput, -1.0), 1.0);
 
     // leftElevatorMotor.set(motorOutput);
-    currentSetpoint = position;
+
+    // After moving by hand or stopping, start from wherever the elevator is now
+    double now = Timer.getFPGATimestamp();
+    if (now - lastProfileTime > kProfileTimeoutSeconds) {
+      setpoint = new TrapezoidProfile.State(measuredPosition, measuredVelocity);
+    }
+    lastProfileTime = now;
+
+    // Step the profile towards the target and feed forward the voltage to follow it
+    TrapezoidProfile.State next =
+        profile.calculate(kDt, setpoint, new TrapezoidProfile.State(position, 0));
+    scheduleGains(next.position);
+    double ffVolts = feedforward.calculateWithVelocities(setpoint.velocity, next.velocity);
+    setpoint = next;
     leftElevatorMotorController.setReference(
-        position, ControlType.kPosition, ClosedLoopSlot.kSlot0, ElevatorConstants.kFF);
+        setpoint.position, ControlType.kPosition, kSlots[scheduleRow], ffVolts);
     // rightElevatorMotorController.setReference(
     //         position, ControlType.kPosition, ClosedLoopSlot.kSlot0,
     //         new ElevatorFeedforward(0.2,1.44,1.5,0.05).calculate(0));
@@ -100,15 +161,101 @@ public class ElevatorModule implements ElevatorIO {
 
   }
 
+  @Override
+  public void holdPosition(double position) {
+    // Finish the profile at the goal, so nothing is left feeding forward a velocity
+    lastProfileTime = Timer.getFPGATimestamp();
+    setpoint = new TrapezoidProfile.State(position, 0);
+    scheduleGains(position);
+    leftElevatorMotorController.setReference(
+        position, ControlType.kPosition, kSlots[scheduleRow], feedforward.calculate(0));
+  }
+
+  // Interpolates the feedforward for a height and picks the PID slot of the stage it is in
+  private void scheduleGains(double height) {
+    feedforward.setKs(feedforwardSchedule[0].get(height));
+    feedforward.setKg(feedforwardSchedule[1].get(height));
+    feedforward.setKv(feedforwardSchedule[2].get(height));
+    feedforward.setKa(feedforwardSchedule[3].get(height));
+
+    scheduleRow = 0;
+    while (scheduleRow + 1 < ElevatorConstants.kScheduleHeights.length
+        && height >= ElevatorConstants.kScheduleHeights[scheduleRow + 1]) {
+      scheduleRow++;
+    }
+  }
+
+  @Override
+  public double getP() {
+    return ElevatorConstants.kSchedulePID[scheduleRow][0];
+  }
+
+  @Override
+  public double getI() {
+    return ElevatorConstants.kSchedulePID[scheduleRow][1];
+  }
+
+  @Override
+  public double getD() {
+    return ElevatorConstants.kSchedulePID[scheduleRow][2];
+  }
+
+  @Override
+  public double getkS() {
+    return feedforward.getKs();
+  }
+
+  @Override
+  public double getkG() {
+    return feedforward.getKg();
+  }
+
+  @Override
+  public double getkV() {
+    return feedforward.getKv();
+  }
+
+  @Override
+  public double getkA() {
+    return feedforward.getKa();
+  }
+
   @Override
   public void updateInputs(ElevatorIOInputs inputs) {
     inputs.setpointMeters = getSetpoint();
-    inputs.positionMeters = getElevatorPosition();
+    ifOk(
+        leftElevatorMotor,
+        leftElevatorMotorEncoder::getPosition,
+        (value) -> inputs.positionMeters = value);
+    ifOk(
+        leftElevatorMotor,
+        leftElevatorMotorEncoder::getVelocity,
+        (value) -> inputs.velocityMetersPerSec = value / 60.0);
+    ifOk(
+        leftElevatorMotor,
+        new DoubleSupplier[] {
+          leftElevatorMotor::getAppliedOutput, leftElevatorMotor::getBusVoltage
+        },
+        (values) -> inputs.appliedVoltage = values[0] * values[1]);
+    inputs.limitSwitchPressed = leftElevatorMotor.getReverseLimitSwitch().isPressed();
+
+    // Left then right
+    inputs.motorCurrent =
+        new double[] {leftElevatorMotor.getOutputCurrent(), rightElevatorMotor.getOutputCurrent()};
+    inputs.motorTemperature =
+        new double[] {
+          leftElevatorMotor.getMotorTemperature(), rightElevatorMotor.getMotorTemperature()
+        };
   }
 
   @Override
   public double getSetpoint() {
-    return currentSetpoint;
+    return setpoint.position;
+  }
+
+  @Override
+  public void setVoltage(double voltage) {
+    leftElevatorMotor.setVoltage(voltage);
   }
 
   @Override
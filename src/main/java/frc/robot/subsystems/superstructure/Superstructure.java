@@ -0,0 +1,184 @@
+package frc.robot.subsystems.superstructure;
+
+import static frc.robot.subsystems.superstructure.SuperstructureConstants.kAlgaePivotLimits;
+import static frc.robot.subsystems.superstructure.SuperstructureConstants.kCoralPivotLimits;
+import static frc.robot.subsystems.superstructure.SuperstructureConstants.kZoneBottoms;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.subsystems.algaeIntake.AlgaeIntake;
+import frc.robot.subsystems.algaeIntake.AlgaeIntakeConstants;
+import frc.robot.subsystems.coralIntake.CoralIntake;
+import frc.robot.subsystems.coralIntake.CoralIntakeConstants;
+import frc.robot.subsystems.elevator.Elevator;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Moves the elevator and both pivots together without them hitting each other. The elevator's
+ * travel is split into zones, each allowing a range of pivot positions (see {@link
+ * SuperstructureConstants}). Every loop the pivots head for the closest position to their goal
+ * that is allowed everywhere between the elevator and its goal, and the elevator goes as far
+ * towards its goal as the pivots' current positions allow, so everything moves at once whenever it
+ * safely can. Moves finish once everything has actually arrived, or once they have taken well
+ * over the estimated time. A pivot left at {@link SuperstructureState#kHold} isn't commanded or
+ * required, so commands running it aren't interrupted.
+ */
+public class Superstructure {
+  private final Elevator elevator;
+  private final CoralIntake coralIntake;
+  private final AlgaeIntake algaeIntake;
+
+  private SuperstructureState activeGoal = null;
+  private double moveDeadline = 0;
+
+  public Superstructure(Elevator elevator, CoralIntake coralIntake, AlgaeIntake algaeIntake) {
+    this.elevator = elevator;
+    this.coralIntake = coralIntake;
+    this.algaeIntake = algaeIntake;
+  }
+
+  /**
+   * Moves everything to a state, finishing once it is there. The elevator is left holding the goal
+   * instead of the last step of its profile.
+   *
+   * @param goal The state to move to
+   */
+  public Command goTo(SuperstructureState goal) {
+    List<Subsystem> requirements = new ArrayList<>(List.of(elevator));
+    if (!Double.isNaN(goal.coralPivot)) requirements.add(coralIntake);
+    if (!Double.isNaN(goal.algaePivot)) requirements.add(algaeIntake);
+
+    return Commands.startRun(
+            () -> start(goal), () -> step(goal), requirements.toArray(new Subsystem[0]))
+        .until(() -> isAt(goal) || hasTimedOut())
+        .andThen(Commands.runOnce(() -> elevator.holdHeight(goal.height), elevator))
+        .withName("Superstructure");
+  }
+
+  /** Whether the elevator and both pivots are at a state. */
+  public boolean isAt(SuperstructureState state) {
+    return elevator.isAtHeight(state.height)
+        && (Double.isNaN(state.coralPivot) || coralIntake.isPivotAt(state.coralPivot))
+        && (Double.isNaN(state.algaePivot) || algaeIntake.isPivotAt(state.algaePivot));
+  }
+
+  /**
+   * Estimates how long a move to a state takes, counting the time the elevator waits for the coral
+   * pivot to get out of the way.
+   *
+   * @param goal The state to move to
+   * @return The time in seconds
+   */
+  public double getTimeToReach(SuperstructureState goal) {
+    SuperstructureState resolved = resolveHolds(goal);
+    double height = elevator.getHeight();
+    double[] coralLimits = limitsBetween(kCoralPivotLimits, height, resolved.height);
+    double clearTime =
+        coralIntake.getTimeToReach(
+            MathUtil.clamp(coralIntake.getPivotPosition(), coralLimits[0], coralLimits[1]));
+
+    return Math.max(
+        clearTime + elevator.getTimeToReach(resolved.height),
+        Math.max(
+            coralIntake.getTimeToReach(resolved.coralPivot),
+            algaeIntake.getTimeToReach(resolved.algaePivot)));
+  }
+
+  private void start(SuperstructureState goal) {
+    activeGoal = resolveHolds(goal);
+    // Gives up well after the estimate, so a pivot that can't quite settle doesn't stall an auto
+    moveDeadline =
+        Timer.getFPGATimestamp()
+            + getTimeToReach(goal)
+            + SuperstructureConstants.kMoveTimeoutMarginSeconds;
+    Logger.recordOutput("Superstructure/TimedOut", false);
+  }
+
+  private boolean hasTimedOut() {
+    if (Timer.getFPGATimestamp() < moveDeadline) return false;
+    Logger.recordOutput("Superstructure/TimedOut", true);
+    return true;
+  }
+
+  private void step(SuperstructureState goal) {
+    double height = elevator.getHeight();
+    double coralPivot = coralIntake.getPivotPosition();
+    double algaePivot = algaeIntake.getPivotPosition();
+
+    // The pivots can only go where they won't hit anything on the rest of the way, held pivots
+    // stay where they were when the move started
+    double[] coralLimits = limitsBetween(kCoralPivotLimits, height, goal.height);
+    double[] algaeLimits = limitsBetween(kAlgaePivotLimits, height, goal.height);
+    double coralTarget = MathUtil.clamp(activeGoal.coralPivot, coralLimits[0], coralLimits[1]);
+    double algaeTarget = MathUtil.clamp(activeGoal.algaePivot, algaeLimits[0], algaeLimits[1]);
+    double heightTarget = reachableHeight(height, goal.height, coralPivot, algaePivot);
+
+    elevator.moveToHeight(heightTarget);
+    if (!Double.isNaN(goal.coralPivot)) coralIntake.movePivot(coralTarget);
+    if (!Double.isNaN(goal.algaePivot)) algaeIntake.movePivot(algaeTarget);
+
+    Logger.recordOutput(
+        "Superstructure/Goal",
+        new double[] {activeGoal.height, activeGoal.coralPivot, activeGoal.algaePivot});
+    Logger.recordOutput(
+        "Superstructure/Target", new double[] {heightTarget, coralTarget, algaeTarget});
+  }
+
+  // Fills in the pivots that should stay where they are
+  private SuperstructureState resolveHolds(SuperstructureState goal) {
+    return new SuperstructureState(
+        goal.height,
+        Double.isNaN(goal.coralPivot) ? coralIntake.getPivotPosition() : goal.coralPivot,
+        Double.isNaN(goal.algaePivot) ? algaeIntake.getPivotPosition() : goal.algaePivot);
+  }
+
+  // The furthest height towards the goal the elevator can go with the pivots where they are
+  private static double reachableHeight(
+      double height, double goalHeight, double coralPivot, double algaePivot) {
+    int zone = zoneOf(height);
+    int goalZone = zoneOf(goalHeight);
+    int direction = goalZone > zone ? 1 : -1;
+    for (int next = zone + direction; next != goalZone + direction; next += direction) {
+      if (!allows(next, coralPivot, algaePivot)) {
+        // Wait just short of the boundary with the zone the pivots aren't ready for
+        return direction > 0
+            ? kZoneBottoms[next] - SuperstructureConstants.kZoneMargin
+            : kZoneBottoms[zone] + SuperstructureConstants.kZoneMargin;
+      }
+      zone = next;
+    }
+    return goalHeight;
+  }
+
+  // Whether the pivot positions are allowed in a zone, give or take the pivot tolerances
+  private static boolean allows(int zone, double coralPivot, double algaePivot) {
+    return coralPivot >= kCoralPivotLimits[zone][0] - CoralIntakeConstants.kPivotTolerance
+        && coralPivot <= kCoralPivotLimits[zone][1] + CoralIntakeConstants.kPivotTolerance
+        && algaePivot >= kAlgaePivotLimits[zone][0] - AlgaeIntakeConstants.kPivotTolerance
+        && algaePivot <= kAlgaePivotLimits[zone][1] + AlgaeIntakeConstants.kPivotTolerance;
+  }
+
+  // The pivot range allowed in every zone between two heights
+  private static double[] limitsBetween(double[][] limits, double fromHeight, double toHeight) {
+    int first = zoneOf(Math.min(fromHeight, toHeight));
+    int last = zoneOf(Math.max(fromHeight, toHeight));
+    double min = Double.NEGATIVE_INFINITY;
+    double max = Double.POSITIVE_INFINITY;
+    for (int zone = first; zone <= last; zone++) {
+      min = Math.max(min, limits[zone][0]);
+      max = Math.min(max, limits[zone][1]);
+    }
+    return new double[] {min, max};
+  }
+
+  private static int zoneOf(double height) {
+    int zone = 0;
+    while (zone + 1 < kZoneBottoms.length && height >= kZoneBottoms[zone + 1]) zone++;
+    return zone;
+  }
+}
@@ -0,0 +1,19 @@
+package frc.robot.subsystems.superstructure;
+
+public class SuperstructureConstants {
+  // The elevator's travel is split into zones, each starting at one of these heights and going up
+  // to the next. Between 2 and 20 the carriage passes the second stage crossbar, so the coral
+  // pivot has to stay tucked in, and it can only tilt down to score on L4 near the top
+  public static final double[] kZoneBottoms = {Double.NEGATIVE_INFINITY, 2.0, 20.0};
+
+  // {min, max} pivot positions allowed in each zone
+  public static final double[][] kCoralPivotLimits = {{0.0, 4.6}, {3.3, 5.2}, {2.6, 4.6}};
+  // The algae pivot hasn't been found to hit anything yet
+  public static final double[][] kAlgaePivotLimits = {{-7.0, 0.0}, {-7.0, 0.0}, {-7.0, 0.0}};
+
+  // How far short of a zone the elevator waits for the pivots to get out of the way
+  public static final double kZoneMargin = 0.5;
+
+  // How much longer than the estimate a move can take before it finishes anyway
+  public static final double kMoveTimeoutMarginSeconds = 1.0;
+}
@@ -0,0 +1,48 @@
+package frc.robot.subsystems.superstructure;
+
+import frc.robot.subsystems.algaeIntake.AlgaeIntakeConstants;
+import frc.robot.subsystems.coralIntake.CoralIntakeConstants;
+import frc.robot.subsystems.elevator.ElevatorConstants;
+
+/** A position of the elevator and both pivots together. */
+public class SuperstructureState {
+  /** Use as a pivot position to leave that pivot where it is. */
+  public static final double kHold = Double.NaN;
+
+  public static final SuperstructureState L1 =
+      new SuperstructureState(
+          ElevatorConstants.kElevatorLevel1, CoralIntakeConstants.kPivotNeutalPosition, kHold);
+  public static final SuperstructureState L2 =
+      new SuperstructureState(
+          ElevatorConstants.kElevatorLevel2, CoralIntakeConstants.kPivotNeutalPosition, kHold);
+  public static final SuperstructureState L3 =
+      new SuperstructureState(
+          ElevatorConstants.kElevatorLevel3, CoralIntakeConstants.kPivotNeutalPosition, kHold);
+  public static final SuperstructureState L4 =
+      new SuperstructureState(ElevatorConstants.kElevatorLevel4, 2.8, kHold);
+
+  /** Between levels 1 and 2 with the coral pivot turned all the way back */
+  public static final SuperstructureState PIVOT_BACK = new SuperstructureState(4, 5.1, kHold);
+
+  /** Just above level 2 with both pivots out of the way */
+  public static final SuperstructureState ABOVE_L2 =
+      new SuperstructureState(
+          ElevatorConstants.kElevatorLevel2 + 0.5,
+          CoralIntakeConstants.kPivotNeutalPosition,
+          AlgaeIntakeConstants.kPivotNeutalPosition);
+
+  public final double height;
+  public final double coralPivot;
+  public final double algaePivot;
+
+  /**
+   * @param height The elevator height
+   * @param coralPivot The coral pivot position, or {@link #kHold}
+   * @param algaePivot The algae pivot position, or {@link #kHold}
+   */
+  public SuperstructureState(double height, double coralPivot, double algaePivot) {
+    this.height = height;
+    this.coralPivot = coralPivot;
+    this.algaePivot = algaePivot;
+  }
+}
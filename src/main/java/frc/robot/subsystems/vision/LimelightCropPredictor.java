@@ -0,0 +1,178 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.kCropLookaheadSeconds;
+import static frc.robot.subsystems.vision.VisionConstants.kCropLostFrames;
+import static frc.robot.subsystems.vision.VisionConstants.kCropMargin;
+import static frc.robot.subsystems.vision.VisionConstants.kCropMaxTagDistance;
+import static frc.robot.subsystems.vision.VisionConstants.kCropVelocityWindowSeconds;
+import static frc.robot.subsystems.vision.VisionConstants.kPoseHistorySeconds;
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+import static frc.robot.subsystems.vision.VisionConstants.limelightHorizontalFOV;
+import static frc.robot.subsystems.vision.VisionConstants.limelightNames;
+import static frc.robot.subsystems.vision.VisionConstants.limelightVerticalFOV;
+import static frc.robot.subsystems.vision.VisionConstants.limelightsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.numLimelights;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import frc.robot.FieldConstants;
+import java.util.Optional;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Predicts where the AprilTags will show up in each Limelight's image and crops the detector to
+ * just that region. A smaller crop lets the Limelight run at a higher frame rate with less latency.
+ * If a camera stops seeing targets, it goes back to the full frame until it finds them again.
+ */
+public class LimelightCropPredictor {
+  private static final double[] FULL_FRAME = {-1, 1, -1, 1};
+
+  // Offsets from a tag's center to its four corners, in the tag's frame
+  private static final Transform3d[] TAG_CORNERS = {
+    new Transform3d(
+        new Translation3d(0, FieldConstants.aprilTagWidth / 2, FieldConstants.aprilTagWidth / 2),
+        new Rotation3d()),
+    new Transform3d(
+        new Translation3d(0, -FieldConstants.aprilTagWidth / 2, FieldConstants.aprilTagWidth / 2),
+        new Rotation3d()),
+    new Transform3d(
+        new Translation3d(0, -FieldConstants.aprilTagWidth / 2, -FieldConstants.aprilTagWidth / 2),
+        new Rotation3d()),
+    new Transform3d(
+        new Translation3d(0, FieldConstants.aprilTagWidth / 2, -FieldConstants.aprilTagWidth / 2),
+        new Rotation3d())
+  };
+
+  private final TimeInterpolatableBuffer<Pose2d> poseHistory =
+      TimeInterpolatableBuffer.createBuffer(kPoseHistorySeconds);
+  private final int[] framesWithoutTarget = new int[numLimelights];
+
+  private final double tanHalfHorizontalFOV = Math.tan(limelightHorizontalFOV / 2);
+  private final double tanHalfVerticalFOV = Math.tan(limelightVerticalFOV / 2);
+
+  /**
+   * Predicts the tag locations and pushes new crop windows to every Limelight. Should be called
+   * once per loop.
+   *
+   * @param timestamp The current FPGA timestamp in seconds
+   * @param currentPose The current estimated robot pose
+   */
+  public void update(double timestamp, Pose2d currentPose) {
+    poseHistory.addSample(timestamp, currentPose);
+    Pose2d predictedPose = predictPose(timestamp, currentPose);
+
+    for (int i = 0; i < numLimelights; i++) {
+      if (LimelightHelpers.getTV(limelightNames[i])) {
+        framesWithoutTarget[i] = 0;
+      } else {
+        framesWithoutTarget[i]++;
+      }
+
+      double[] crop = FULL_FRAME;
+      if (framesWithoutTarget[i] <= kCropLostFrames) {
+        // Cover everywhere the tags could be between now and when the frame is captured
+        crop =
+            union(
+                getCropWindow(limelightsRobotToCam[i], currentPose),
+                getCropWindow(limelightsRobotToCam[i], predictedPose));
+      }
+
+      LimelightHelpers.setCropWindow(limelightNames[i], crop[0], crop[1], crop[2], crop[3]);
+      Logger.recordOutput("Vision/" + limelightNames[i] + "/Crop", crop);
+    }
+  }
+
+  /** Resets the pose history and goes back to full frame crops. */
+  public void reset() {
+    poseHistory.clear();
+    for (int i = 0; i < numLimelights; i++) {
+      framesWithoutTarget[i] = kCropLostFrames + 1;
+    }
+  }
+
+  // Extrapolates the pose forward using the velocity over the last few samples in the history
+  private Pose2d predictPose(double timestamp, Pose2d currentPose) {
+    Optional<Pose2d> pastPose = poseHistory.getSample(timestamp - kCropVelocityWindowSeconds);
+    if (pastPose.isEmpty()) return currentPose;
+
+    Twist2d twist = pastPose.get().log(currentPose);
+    double scale = kCropLookaheadSeconds / kCropVelocityWindowSeconds;
+    return currentPose.exp(new Twist2d(twist.dx * scale, twist.dy * scale, twist.dtheta * scale));
+  }
+
+  /**
+   * Finds the bounding box of every tag corner that would be in view of a camera.
+   *
+   * @return {xMin, xMax, yMin, yMax} in normalized image coordinates, or null if no tags are in
+   *     view
+   */
+  private double[] getCropWindow(Transform3d robotToCam, Pose2d robotPose) {
+    Pose3d cameraPose = new Pose3d(robotPose).transformBy(robotToCam);
+
+    double xMin = Double.MAX_VALUE, xMax = -Double.MAX_VALUE;
+    double yMin = Double.MAX_VALUE, yMax = -Double.MAX_VALUE;
+    boolean anyVisible = false;
+
+    for (AprilTag tag : kTagLayout.getTags()) {
+      // Skip tags that are too far away or facing away from the camera
+      Translation3d cameraInTag = cameraPose.relativeTo(tag.pose).getTranslation();
+      if (cameraInTag.getX() <= 0 || cameraInTag.getNorm() > kCropMaxTagDistance) continue;
+
+      double tagXMin = Double.MAX_VALUE, tagXMax = -Double.MAX_VALUE;
+      double tagYMin = Double.MAX_VALUE, tagYMax = -Double.MAX_VALUE;
+      boolean behindCamera = false;
+
+      for (Transform3d corner : TAG_CORNERS) {
+        Translation3d cornerInCamera =
+            tag.pose.transformBy(corner).relativeTo(cameraPose).getTranslation();
+        if (cornerInCamera.getX() <= 0.05) {
+          behindCamera = true;
+          break;
+        }
+
+        // Pinhole projection, +x is image right and +y is image up
+        double x = -cornerInCamera.getY() / cornerInCamera.getX() / tanHalfHorizontalFOV;
+        double y = cornerInCamera.getZ() / cornerInCamera.getX() / tanHalfVerticalFOV;
+        tagXMin = Math.min(tagXMin, x);
+        tagXMax = Math.max(tagXMax, x);
+        tagYMin = Math.min(tagYMin, y);
+        tagYMax = Math.max(tagYMax, y);
+      }
+
+      // Skip tags that are behind the camera or completely outside the image
+      if (behindCamera || tagXMax < -1 || tagXMin > 1 || tagYMax < -1 || tagYMin > 1) continue;
+
+      anyVisible = true;
+      xMin = Math.min(xMin, tagXMin);
+      xMax = Math.max(xMax, tagXMax);
+      yMin = Math.min(yMin, tagYMin);
+      yMax = Math.max(yMax, tagYMax);
+    }
+
+    if (!anyVisible) return null;
+
+    return new double[] {
+      MathUtil.clamp(xMin - kCropMargin, -1, 1),
+      MathUtil.clamp(xMax + kCropMargin, -1, 1),
+      MathUtil.clamp(yMin - kCropMargin, -1, 1),
+      MathUtil.clamp(yMax + kCropMargin, -1, 1)
+    };
+  }
+
+  // Smallest window containing both crops, or the full frame if no tags are in view at all
+  private static double[] union(double[] a, double[] b) {
+    if (a == null && b == null) return FULL_FRAME;
+    if (a == null) return b;
+    if (b == null) return a;
+    return new double[] {
+      Math.min(a[0], b[0]), Math.max(a[1], b[1]), Math.min(a[2], b[2]), Math.max(a[3], b[3])
+    };
+  }
+}
@@ -0,0 +1,181 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.kBlueCoralStationTagIDs;
+import static frc.robot.subsystems.vision.VisionConstants.kBlueReefTagIDs;
+import static frc.robot.subsystems.vision.VisionConstants.kCoralStationRegionRadius;
+import static frc.robot.subsystems.vision.VisionConstants.kDownscaleDistances;
+import static frc.robot.subsystems.vision.VisionConstants.kDownscaleFactors;
+import static frc.robot.subsystems.vision.VisionConstants.kFilterFOVMargin;
+import static frc.robot.subsystems.vision.VisionConstants.kRedCoralStationTagIDs;
+import static frc.robot.subsystems.vision.VisionConstants.kRedReefTagIDs;
+import static frc.robot.subsystems.vision.VisionConstants.kReefAlignTagCount;
+import static frc.robot.subsystems.vision.VisionConstants.kReefRegionRadius;
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+import static frc.robot.subsystems.vision.VisionConstants.limelightHorizontalFOV;
+import static frc.robot.subsystems.vision.VisionConstants.limelightNames;
+import static frc.robot.subsystems.vision.VisionConstants.limelightsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.numLimelights;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.AllianceFlipUtil;
+import java.util.Arrays;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Decides which AprilTags each Limelight should search for and how much to downscale the detector,
+ * based on where the robot is, which alliance we are on and what the robot is currently doing.
+ * Searching for fewer, closer tags lets the Limelights run a faster pipeline.
+ */
+public class LimelightTagPolicy {
+  /** What the robot is currently doing, which decides the tags that matter. */
+  public static enum Task {
+    /** Driving around the field, use whatever tags are near */
+    GENERAL,
+
+    /** Lining up to score on the reef */
+    REEF_ALIGN,
+
+    /** Approaching a coral station to intake */
+    CORAL_STATION
+  }
+
+  private static final int[] ALL_TAG_IDS = getAllTagIDs();
+
+  private Task task = Task.GENERAL;
+
+  // Last values sent to each Limelight, so NetworkTables is only written when something changes
+  private final int[][] lastTagIDs = new int[numLimelights][];
+  private final float[] lastDownscale = new float[numLimelights];
+
+  public void setTask(Task task) {
+    this.task = task;
+  }
+
+  public Task getTask() {
+    return task;
+  }
+
+  /**
+   * Chooses the tags and downscale for every Limelight and sends them if they changed. Should be
+   * called once per loop.
+   *
+   * @param robotPose The current estimated robot pose
+   */
+  public void update(Pose2d robotPose) {
+    int[] tagIDs = selectTagIDs(robotPose);
+
+    for (int i = 0; i < numLimelights; i++) {
+      int[] cameraTagIDs = filterToCameraView(tagIDs, robotPose, i);
+      // If none of the chosen tags are in front of this camera, let it search for all of them so
+      // it can still help once the robot turns
+      if (cameraTagIDs.length == 0) cameraTagIDs = tagIDs;
+
+      float downscale = selectDownscale(cameraTagIDs, robotPose);
+
+      if (!Arrays.equals(cameraTagIDs, lastTagIDs[i])) {
+        LimelightHelpers.SetFiducialIDFiltersOverride(limelightNames[i], cameraTagIDs);
+        lastTagIDs[i] = cameraTagIDs;
+      }
+      if (downscale != lastDownscale[i]) {
+        LimelightHelpers.SetFiducialDownscalingOverride(limelightNames[i], downscale);
+        lastDownscale[i] = downscale;
+      }
+
+      Logger.recordOutput("Vision/" + limelightNames[i] + "/TagFilter", cameraTagIDs);
+      Logger.recordOutput("Vision/" + limelightNames[i] + "/Downscale", downscale);
+    }
+    Logger.recordOutput("Vision/TagPolicyTask", task.toString());
+  }
+
+  /** Picks the tags that matter for the current task and field region. */
+  private int[] selectTagIDs(Pose2d robotPose) {
+    boolean isRed = AllianceFlipUtil.shouldFlip();
+    int[] reefTags = isRed ? kRedReefTagIDs : kBlueReefTagIDs;
+    int[] stationTags = isRed ? kRedCoralStationTagIDs : kBlueCoralStationTagIDs;
+
+    switch (task) {
+      case REEF_ALIGN:
+        return nearestTags(reefTags, robotPose.getTranslation(), kReefAlignTagCount);
+      case CORAL_STATION:
+        return stationTags;
+      default:
+        break;
+    }
+
+    // No specific task, so pick based on which part of the field we're in
+    Translation2d robot = robotPose.getTranslation();
+    AllianceFlipUtil.FlippedField field = AllianceFlipUtil.getField();
+    Translation2d reefCenter = field.reefCenter;
+    Translation2d leftStation = field.leftCoralStationCenterFace.getTranslation();
+    Translation2d rightStation = field.rightCoralStationCenterFace.getTranslation();
+
+    if (robot.getDistance(reefCenter) < kReefRegionRadius) {
+      return reefTags;
+    }
+    if (robot.getDistance(leftStation) < kCoralStationRegionRadius
+        || robot.getDistance(rightStation) < kCoralStationRegionRadius) {
+      return stationTags;
+    }
+    return ALL_TAG_IDS;
+  }
+
+  /** Keeps only the tags that face the camera and are roughly inside its horizontal FOV. */
+  private int[] filterToCameraView(int[] tagIDs, Pose2d robotPose, int camera) {
+    Pose3d cameraPose = new Pose3d(robotPose).transformBy(limelightsRobotToCam[camera]);
+    Pose2d cameraPose2d = cameraPose.toPose2d();
+
+    return Arrays.stream(tagIDs)
+        .filter(
+            id -> {
+              var tagPose = kTagLayout.getTagPose(id);
+              if (tagPose.isEmpty()) return false;
+
+              // Tag must face the camera
+              if (cameraPose.relativeTo(tagPose.get()).getX() <= 0) return false;
+
+              Translation2d tagInCamera =
+                  tagPose.get().toPose2d().getTranslation().minus(cameraPose2d.getTranslation());
+              double bearing =
+                  MathUtil.angleModulus(
+                      tagInCamera.getAngle().minus(cameraPose2d.getRotation()).getRadians());
+              return Math.abs(bearing) <= limelightHorizontalFOV / 2 + kFilterFOVMargin;
+            })
+        .toArray();
+  }
+
+  /** Downscales more when the closest tag being searched for is close, since it will be large. */
+  private float selectDownscale(int[] tagIDs, Pose2d robotPose) {
+    double closestDistance = Double.MAX_VALUE;
+    for (int id : tagIDs) {
+      closestDistance = Math.min(closestDistance, tagDistance(id, robotPose.getTranslation()));
+    }
+
+    for (int i = 0; i < kDownscaleDistances.length; i++) {
+      if (closestDistance < kDownscaleDistances[i]) return kDownscaleFactors[i];
+    }
+    return kDownscaleFactors[kDownscaleFactors.length - 1];
+  }
+
+  private static int[] nearestTags(int[] tagIDs, Translation2d position, int count) {
+    return Arrays.stream(tagIDs)
+        .boxed()
+        .sorted((a, b) -> Double.compare(tagDistance(a, position), tagDistance(b, position)))
+        .limit(count)
+        .mapToInt(Integer::intValue)
+        .sorted()
+        .toArray();
+  }
+
+  private static double tagDistance(int id, Translation2d position) {
+    var tagPose = kTagLayout.getTagPose(id);
+    if (tagPose.isEmpty()) return Double.MAX_VALUE;
+    return tagPose.get().toPose2d().getTranslation().getDistance(position);
+  }
+
+  private static int[] getAllTagIDs() {
+    return kTagLayout.getTags().stream().mapToInt(tag -> tag.ID).sorted().toArray();
+  }
+}
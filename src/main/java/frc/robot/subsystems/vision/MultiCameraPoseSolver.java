@@ -0,0 +1,276 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.camsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.kJointSolveConvergence;
+import static frc.robot.subsystems.vision.VisionConstants.kJointSolveHuberPixels;
+import static frc.robot.subsystems.vision.VisionConstants.kJointSolveMaxIterations;
+import static frc.robot.subsystems.vision.VisionConstants.kJointSolveWindowSeconds;
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.photonvision.estimation.TargetModel;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Solves for one robot pose using every tag corner seen by every camera at once, instead of
+ * solving each camera separately and blending the results. The robot is assumed to be flat on the
+ * floor, so only x, y and heading are solved for, using damped Gauss-Newton starting from the
+ * current pose estimate.
+ */
+public class MultiCameraPoseSolver {
+  /** The result of a joint solve. */
+  public static class Estimate {
+    public final Pose2d pose;
+    public final double timestamp;
+    public final double rmsErrorPixels;
+    public final int tagCount;
+
+    public Estimate(Pose2d pose, double timestamp, double rmsErrorPixels, int tagCount) {
+      this.pose = pose;
+      this.timestamp = timestamp;
+      this.rmsErrorPixels = rmsErrorPixels;
+      this.tagCount = tagCount;
+    }
+  }
+
+  // One observed tag corner, with everything needed to project it precomputed
+  private static class Observation {
+    final Translation3d fieldPoint;
+    final double pixelX, pixelY;
+    final double[] camRotation; // robot-to-camera rotation, row-major
+    final double[] camTranslation; // camera position in the robot frame
+    final double fx, fy, cx, cy;
+
+    Observation(Translation3d fieldPoint, TargetCorner corner, int camera, double[] cameraMatrix) {
+      this.fieldPoint = fieldPoint;
+      this.pixelX = corner.x;
+      this.pixelY = corner.y;
+      this.camRotation = rotationMatrix(camsRobotToCam[camera].getRotation());
+      this.camTranslation =
+          new double[] {
+            camsRobotToCam[camera].getX(),
+            camsRobotToCam[camera].getY(),
+            camsRobotToCam[camera].getZ()
+          };
+      this.fx = cameraMatrix[0];
+      this.cx = cameraMatrix[2];
+      this.fy = cameraMatrix[4];
+      this.cy = cameraMatrix[5];
+    }
+  }
+
+  // Row-major rotation matrix, column j is the rotated unit vector along axis j
+  private static double[] rotationMatrix(Rotation3d rotation) {
+    double[] matrix = new double[9];
+    Translation3d[] axes = {
+      new Translation3d(1, 0, 0), new Translation3d(0, 1, 0), new Translation3d(0, 0, 1)
+    };
+    for (int j = 0; j < 3; j++) {
+      Translation3d column = axes[j].rotateBy(rotation);
+      matrix[j] = column.getX();
+      matrix[3 + j] = column.getY();
+      matrix[6 + j] = column.getZ();
+    }
+    return matrix;
+  }
+
+  /**
+   * Solves for the robot pose from the latest result of every camera.
+   *
+   * @param results The latest pipeline result of each camera, ordered by camera index
+   * @param cameraMatrices The row-major 3x3 intrinsics of each camera, empty if unknown
+   * @param initialGuess The current pose estimate, used as the starting point
+   * @return The solved pose, or empty if there weren't enough corners or the solve failed
+   */
+  public Optional<Estimate> solve(
+      PhotonPipelineResult[] results, double[][] cameraMatrices, Pose2d initialGuess) {
+    // Only use results captured close together, a stale result from one camera would pull the
+    // solution back to where the robot used to be
+    double newestTimestamp = 0;
+    for (PhotonPipelineResult result : results) {
+      if (result.hasTargets()) {
+        newestTimestamp = Math.max(newestTimestamp, result.getTimestampSeconds());
+      }
+    }
+
+    List<Observation> observations = new ArrayList<>();
+    int tagCount = 0;
+    for (int i = 0; i < results.length && i < cameraMatrices.length; i++) {
+      PhotonPipelineResult result = results[i];
+      if (!result.hasTargets() || cameraMatrices[i].length != 9) continue;
+      if (newestTimestamp - result.getTimestampSeconds() > kJointSolveWindowSeconds) continue;
+
+      for (PhotonTrackedTarget target : result.getTargets()) {
+        Optional<Pose3d> tagPose = kTagLayout.getTagPose(target.getFiducialId());
+        List<TargetCorner> corners = target.getDetectedCorners();
+        if (tagPose.isEmpty() || corners.size() != 4) continue;
+
+        // Same corner ordering PhotonVision's own PnP uses
+        List<Translation3d> fieldCorners =
+            TargetModel.kAprilTag36h11.getFieldVertices(tagPose.get());
+        for (int c = 0; c < 4; c++) {
+          observations.add(
+              new Observation(fieldCorners.get(c), corners.get(c), i, cameraMatrices[i]));
+        }
+        tagCount++;
+      }
+    }
+
+    // 3 unknowns, and a single tag's 4 corners are too ambiguous to trust on their own
+    if (tagCount < 2) return Optional.empty();
+
+    double x = initialGuess.getX();
+    double y = initialGuess.getY();
+    double theta = initialGuess.getRotation().getRadians();
+    double lambda = 1e-3;
+    double cost = evaluate(observations, x, y, theta, null, null);
+    if (!Double.isFinite(cost)) return Optional.empty();
+
+    double[] jtj = new double[9];
+    double[] jtr = new double[3];
+    for (int iteration = 0; iteration < kJointSolveMaxIterations; iteration++) {
+      evaluate(observations, x, y, theta, jtj, jtr);
+
+      // Levenberg-Marquardt damping keeps steps small when the linearization is poor
+      for (int i = 0; i < 3; i++) jtj[i * 4] *= 1 + lambda;
+      double[] step = solve3x3(jtj, jtr);
+      if (step == null) break;
+
+      double newX = x - step[0], newY = y - step[1], newTheta = theta - step[2];
+      double newCost = evaluate(observations, newX, newY, newTheta, null, null);
+      if (newCost < cost) {
+        x = newX;
+        y = newY;
+        theta = newTheta;
+        cost = newCost;
+        lambda /= 10;
+        if (Math.abs(step[0]) + Math.abs(step[1]) + Math.abs(step[2]) < kJointSolveConvergence) {
+          break;
+        }
+      } else {
+        lambda *= 10;
+      }
+    }
+
+    double rmsError = Math.sqrt(2 * cost / observations.size());
+    return Optional.of(
+        new Estimate(new Pose2d(x, y, new Rotation2d(theta)), newestTimestamp, rmsError, tagCount));
+  }
+
+  /**
+   * Projects every observed corner from the given robot pose and compares it to where it was seen.
+   * If jtj and jtr are given, they are filled with J^T W J and J^T W r for a Gauss-Newton step.
+   *
+   * @return The robust (Huber) cost of the reprojection errors
+   */
+  private static double evaluate(
+      List<Observation> observations,
+      double x,
+      double y,
+      double theta,
+      double[] jtj,
+      double[] jtr) {
+    if (jtj != null) {
+      Arrays.fill(jtj, 0);
+      Arrays.fill(jtr, 0);
+    }
+
+    double cos = Math.cos(theta), sin = Math.sin(theta);
+    double cost = 0;
+
+    for (Observation obs : observations) {
+      // Field point into the robot frame
+      double dx = obs.fieldPoint.getX() - x;
+      double dy = obs.fieldPoint.getY() - y;
+      double[] robotPoint = {cos * dx + sin * dy, -sin * dx + cos * dy, obs.fieldPoint.getZ()};
+
+      // Derivatives of the robot frame point with respect to x, y and theta
+      double[][] dRobot = {{-cos, sin, 0}, {-sin, -cos, 0}, {robotPoint[1], -robotPoint[0], 0}};
+
+      // Robot frame into the camera frame (x forward, y left, z up)
+      double[] camPoint = toCamera(obs, robotPoint, true);
+      if (camPoint[0] <= 0.05) return Double.POSITIVE_INFINITY; // corner behind the camera
+
+      // Pinhole projection, image x is to the right and image y is down
+      double u = obs.cx - obs.fx * camPoint[1] / camPoint[0];
+      double v = obs.cy - obs.fy * camPoint[2] / camPoint[0];
+      double ru = u - obs.pixelX;
+      double rv = v - obs.pixelY;
+
+      // Huber weighting so a single bad corner can't drag the whole solution
+      double norm = Math.hypot(ru, rv);
+      double weight = norm <= kJointSolveHuberPixels ? 1 : kJointSolveHuberPixels / norm;
+      cost +=
+          norm <= kJointSolveHuberPixels
+              ? 0.5 * norm * norm
+              : kJointSolveHuberPixels * (norm - 0.5 * kJointSolveHuberPixels);
+
+      if (jtj == null) continue;
+
+      double invX = 1 / camPoint[0];
+      double[] ju = new double[3];
+      double[] jv = new double[3];
+      for (int p = 0; p < 3; p++) {
+        double[] dCam = toCamera(obs, dRobot[p], false);
+        ju[p] = -obs.fx * (dCam[1] * invX - camPoint[1] * dCam[0] * invX * invX);
+        jv[p] = -obs.fy * (dCam[2] * invX - camPoint[2] * dCam[0] * invX * invX);
+      }
+
+      for (int r = 0; r < 3; r++) {
+        for (int c = 0; c < 3; c++) {
+          jtj[r * 3 + c] += weight * (ju[r] * ju[c] + jv[r] * jv[c]);
+        }
+        jtr[r] += weight * (ju[r] * ru + jv[r] * rv);
+      }
+    }
+
+    return cost;
+  }
+
+  // Applies the inverse robot-to-camera rotation (and translation for points, not for derivatives)
+  private static double[] toCamera(Observation obs, double[] robotVector, boolean isPoint) {
+    double px = robotVector[0] - (isPoint ? obs.camTranslation[0] : 0);
+    double py = robotVector[1] - (isPoint ? obs.camTranslation[1] : 0);
+    double pz = robotVector[2] - (isPoint ? obs.camTranslation[2] : 0);
+    double[] r = obs.camRotation;
+    return new double[] {
+      r[0] * px + r[3] * py + r[6] * pz,
+      r[1] * px + r[4] * py + r[7] * pz,
+      r[2] * px + r[5] * py + r[8] * pz
+    };
+  }
+
+  // Solves a x = b for a symmetric 3x3 matrix using Cramer's rule, null if a is singular
+  private static double[] solve3x3(double[] a, double[] b) {
+    double det =
+        a[0] * (a[4] * a[8] - a[5] * a[7])
+            - a[1] * (a[3] * a[8] - a[5] * a[6])
+            + a[2] * (a[3] * a[7] - a[4] * a[6]);
+    if (Math.abs(det) < 1e-12) return null;
+
+    return new double[] {
+      (b[0] * (a[4] * a[8] - a[5] * a[7])
+              - a[1] * (b[1] * a[8] - a[5] * b[2])
+              + a[2] * (b[1] * a[7] - a[4] * b[2]))
+          / det,
+      (a[0] * (b[1] * a[8] - a[5] * b[2])
+              - b[0] * (a[3] * a[8] - a[5] * a[6])
+              + a[2] * (a[3] * b[2] - b[1] * a[6]))
+          / det,
+      (a[0] * (a[4] * b[2] - b[1] * a[7])
+              - a[1] * (a[3] * b[2] - b[1] * a[6])
+              + b[0] * (a[3] * a[7] - a[4] * a[6]))
+          / det
+    };
+  }
+}
@@ -64,6 +64,49 @@ public class VisionConstants {
         new Rotation3d(0, Units.degreesToRadians(-16.7), Units.degreesToRadians(180))),
   };
 
+  // Limelights used for MegaTag2 localization
+  public static final String[] limelightNames = {"limelight-left", "limelight-right"};
+  public static final int numLimelights = limelightNames.length;
+
+  // (Placeholder values. Measure the mounts on the actual robot.)
+  public static final Transform3d[] limelightsRobotToCam = {
+    new Transform3d(
+        new Translation3d(
+            Units.inchesToMeters(10), Units.inchesToMeters(10), Units.inchesToMeters(8)),
+        new Rotation3d(0, Units.degreesToRadians(-20), Units.degreesToRadians(30))),
+    new Transform3d(
+        new Translation3d(
+            Units.inchesToMeters(10), Units.inchesToMeters(-10), Units.inchesToMeters(8)),
+        new Rotation3d(0, Units.degreesToRadians(-20), Units.degreesToRadians(-30))),
+  };
+
+  // Limelight 3 field of view
+  public static final double limelightHorizontalFOV = Units.degreesToRadians(62.5);
+  public static final double limelightVerticalFOV = Units.degreesToRadians(48.9);
+
+  // Crop window prediction
+  public static final double kCropLookaheadSeconds = 0.1; // roughly capture + pipeline latency
+  public static final double kCropVelocityWindowSeconds = 0.1;
+  public static final double kCropMargin = 0.15; // normalized image units
+  public static final double kCropMaxTagDistance = 6; // meters
+  public static final int kCropLostFrames = 5; // cycles without a target before going full frame
+
+  // AprilTag IDs by field element (2025 Reefscape)
+  public static final int[] kBlueReefTagIDs = {17, 18, 19, 20, 21, 22};
+  public static final int[] kRedReefTagIDs = {6, 7, 8, 9, 10, 11};
+  public static final int[] kBlueCoralStationTagIDs = {12, 13};
+  public static final int[] kRedCoralStationTagIDs = {1, 2};
+
+  // Tag filter policy
+  public static final int kReefAlignTagCount = 3; // nearest reef tags searched for while aligning
+  public static final double kReefRegionRadius = 3.5; // meters from the reef center
+  public static final double kCoralStationRegionRadius = 2.5; // meters from a station face
+  public static final double kFilterFOVMargin = Units.degreesToRadians(10);
+  // Detector downscale by distance to the nearest searched tag, close tags are large enough to
+  // be found in a downscaled image
+  public static final double[] kDownscaleDistances = {1.5, 3.0, 4.5}; // meters
+  public static final float[] kDownscaleFactors = {3.0f, 2.0f, 1.5f, 1.0f};
+
   // The layout of the AprilTags on the field
   public static final AprilTagFieldLayout kTagLayout =
       AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
@@ -77,6 +120,38 @@ public class VisionConstants {
   public static final Matrix<N3, N1> kSingleTagStdDevs = VecBuilder.fill(1, 1, Double.MAX_VALUE);
   public static final Matrix<N3, N1> kMultiTagStdDevs = VecBuilder.fill(0.2, 0.2, Double.MAX_VALUE);
 
+  // How far back odometry poses are kept for comparing against delayed vision measurements
+  public static final double kPoseHistorySeconds = 1.5;
+  // Uncertainty of the odometry pose itself, added to the vision std devs when gating
+  public static final Matrix<N3, N1> kGateOdometryStdDevs =
+      VecBuilder.fill(0.1, 0.1, Units.degreesToRadians(5));
+  // Squared Mahalanobis distance above which a measurement is rejected (99% bound of the
+  // chi-squared distribution with 2 degrees of freedom, theta drops out with its MAX_VALUE std dev)
+  public static final double kGateChiSquaredThreshold = 9.21;
+
+  // Joint multi-camera solve, off until the vision block in Drive.periodic uses its estimate again
+  public static final boolean kUseJointSolve = false;
+  public static final double kJointSolveWindowSeconds = 0.05; // max capture time spread
+  public static final int kJointSolveMaxIterations = 8;
+  public static final double kJointSolveConvergence = 1e-4; // step size to stop at
+  // Reprojection error past which corners start being down-weighted
+  public static final double kJointSolveHuberPixels = 2.0;
+
+  // How much work the vision simulation does
+  public static enum SimFidelity {
+    /** Simulated camera streams with the tag wireframes drawn on them */
+    FULL,
+
+    /** Tag geometry and noise only, no images are rendered */
+    GEOMETRY_ONLY,
+
+    /** No vision simulation, cameras never see targets */
+    OFF
+  }
+
+  public static final SimFidelity kSimFidelity = SimFidelity.FULL;
+  public static final int[] kSimCameraFPS = {40, 20, 20, 40};
+
   public static Transform3d getSimVersion(Transform3d real) {
     return new Transform3d(real.getTranslation(), new Rotation3d(0, 0, real.getRotation().getZ()));
   }
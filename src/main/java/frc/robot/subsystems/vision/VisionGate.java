@@ -0,0 +1,107 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.kGateChiSquaredThreshold;
+import static frc.robot.subsystems.vision.VisionConstants.kGateOdometryStdDevs;
+import static frc.robot.subsystems.vision.VisionConstants.kPoseHistorySeconds;
+import static frc.robot.subsystems.vision.VisionConstants.numCameras;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import java.util.Optional;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Rejects vision measurements that disagree with odometry. Each vision pose is compared against the
+ * odometry pose at the measurement timestamp, and is thrown out if the Mahalanobis distance between
+ * them (using the camera's std devs from {@link VisionIO#getEstimationStdDevs}) is too large.
+ */
+public class VisionGate {
+  private final TimeInterpolatableBuffer<Pose2d> poseHistory =
+      TimeInterpolatableBuffer.createBuffer(kPoseHistorySeconds);
+
+  private final long[] acceptedCounts = new long[numCameras];
+  private final long[] rejectedCounts = new long[numCameras];
+
+  /**
+   * Records an odometry pose so later vision measurements can be compared against it.
+   *
+   * @param timestamp The FPGA timestamp of the pose in seconds
+   * @param pose The odometry pose at that time
+   */
+  public void addOdometrySample(double timestamp, Pose2d pose) {
+    poseHistory.addSample(timestamp, pose);
+  }
+
+  /** Clears the pose history, should be called whenever the pose is reset. */
+  public void reset() {
+    poseHistory.clear();
+  }
+
+  /**
+   * Checks a vision measurement against the odometry history.
+   *
+   * @param camera The index of the camera that produced the measurement
+   * @param visionPose The pose estimated by the camera
+   * @param timestamp The timestamp of the measurement in seconds
+   * @param stdDevs The std devs of the measurement (x, y, theta)
+   * @return true if the measurement should be passed to the estimator
+   */
+  public boolean test(int camera, Pose2d visionPose, double timestamp, Matrix<N3, N1> stdDevs) {
+    Optional<Pose2d> odometryPose = poseHistory.getSample(timestamp);
+
+    // Nothing to compare against yet (startup or just after a reset), so trust the camera
+    if (odometryPose.isEmpty()) {
+      acceptedCounts[camera]++;
+      return true;
+    }
+
+    double distanceSquared = mahalanobisDistanceSquared(visionPose, odometryPose.get(), stdDevs);
+    boolean accepted = distanceSquared <= kGateChiSquaredThreshold;
+
+    if (accepted) {
+      acceptedCounts[camera]++;
+    } else {
+      rejectedCounts[camera]++;
+    }
+
+    Logger.recordOutput("Vision/cam" + (camera + 1) + "/GateDistance", Math.sqrt(distanceSquared));
+    return accepted;
+  }
+
+  /** Logs the accepted and rejected measurement counts for every camera. */
+  public void logCounts() {
+    for (int i = 0; i < numCameras; i++) {
+      Logger.recordOutput("Vision/cam" + (i + 1) + "/GateAccepted", acceptedCounts[i]);
+      Logger.recordOutput("Vision/cam" + (i + 1) + "/GateRejected", rejectedCounts[i]);
+    }
+  }
+
+  public long getRejectedCount(int camera) {
+    return rejectedCounts[camera];
+  }
+
+  // The covariance is treated as diagonal, so each axis contributes residual^2 / variance.
+  // A std dev of Double.MAX_VALUE squares to infinity and that axis drops out of the distance.
+  private static double mahalanobisDistanceSquared(
+      Pose2d visionPose, Pose2d odometryPose, Matrix<N3, N1> stdDevs) {
+    double[] residual = {
+      visionPose.getX() - odometryPose.getX(),
+      visionPose.getY() - odometryPose.getY(),
+      MathUtil.angleModulus(
+          visionPose.getRotation().getRadians() - odometryPose.getRotation().getRadians())
+    };
+
+    double distanceSquared = 0;
+    for (int i = 0; i < 3; i++) {
+      double visionStd = stdDevs.get(i, 0);
+      double odometryStd = kGateOdometryStdDevs.get(i, 0);
+      double variance = visionStd * visionStd + odometryStd * odometryStd;
+      distanceSquared += residual[i] * residual[i] / variance;
+    }
+    return distanceSquared;
+  }
+}
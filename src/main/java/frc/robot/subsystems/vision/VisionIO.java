@@ -1,9 +1,15 @@
 package frc.robot.subsystems.vision;
 
-import static frc.robot.subsystems.vision.VisionConstants.kMultiTagStdDevs;
+import static frc.robot.subsystems.vision.VisionConstants.AMBIGUITY_THRESHOLD;
 import static frc.robot.subsystems.vision.VisionConstants.kSingleTagStdDevs;
+import static frc.robot.subsystems.vision.VisionConstants.kUseJointSolve;
 import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
 import static frc.robot.subsystems.vision.VisionConstants.numCameras;
+import static frc.robot.subsystems.vision.VisionNoiseModel.kMultiTagBaseStdDev;
+import static frc.robot.subsystems.vision.VisionNoiseModel.kMultiTagDistanceDivisor;
+import static frc.robot.subsystems.vision.VisionNoiseModel.kSingleTagAmbiguityGain;
+import static frc.robot.subsystems.vision.VisionNoiseModel.kSingleTagBaseStdDev;
+import static frc.robot.subsystems.vision.VisionNoiseModel.kSingleTagDistanceDivisor;
 
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
@@ -17,6 +23,7 @@ import java.util.List;
 import java.util.Optional;
 import org.littletonrobotics.junction.AutoLog;
 import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.common.dataflow.structures.Packet;
 import org.photonvision.targeting.PhotonPipelineResult;
 import org.photonvision.targeting.PhotonTrackedTarget;
 
@@ -29,10 +36,22 @@ public interface VisionIO {
     public double[] timestampArray = new double[0];
 
     public int[][] cameraTargets = new int[0][];
+    // Pose ambiguity of each camera's best target, 0 if it has none
+    public double[] bestAmbiguity = new double[0];
 
     public boolean hasEstimate = false;
 
-    public byte[] results;
+    // Raw pipeline results packed with Photon's serializer, one packet per camera
+    public byte[][] results = new byte[0][];
+
+    // Row-major 3x3 intrinsics per camera, empty until the camera reports its calibration
+    public double[][] cameraMatrices = new double[0][];
+
+    // Single pose solved from every camera's tag corners together
+    public Pose2d jointEstimate = new Pose2d();
+    public double jointTimestamp = 0;
+    public double jointRmsErrorPixels = 0;
+    public boolean hasJointEstimate = false;
   }
 
   /** Updates the set of loggable inputs. */
@@ -43,10 +62,61 @@ public interface VisionIO {
   // for sim
   public default void updateInputs(VisionIOInputs inputs, Pose2d estimate, Pose2d odometry) {}
 
+  /**
+   * Re-runs pose estimation from the raw results stored in the inputs. Only called in replay, after
+   * the inputs have been filled from the log.
+   */
+  public default void replayInputs(VisionIOInputs inputs, Pose2d estimate, Rotation2d heading) {}
+
+  // Solves for one pose from all cameras at once and stores it in the inputs
+  public default void updateJointEstimate(
+      VisionIOInputs inputs,
+      PhotonPipelineResult[] results,
+      MultiCameraPoseSolver solver,
+      Pose2d currentEstimate) {
+    if (!kUseJointSolve) {
+      inputs.hasJointEstimate = false;
+      return;
+    }
+
+    var estimate = solver.solve(results, inputs.cameraMatrices, currentEstimate);
+
+    inputs.hasJointEstimate = estimate.isPresent();
+    if (estimate.isPresent()) {
+      inputs.jointEstimate = estimate.get().pose;
+      inputs.jointTimestamp = estimate.get().timestamp;
+      inputs.jointRmsErrorPixels = estimate.get().rmsErrorPixels;
+    }
+  }
+
   public default PhotonPipelineResult getLatestResult(int camIndex) {
     return new PhotonPipelineResult();
   }
 
+  // Packs each camera's result into the same byte format PhotonVision sends over NetworkTables
+  public default byte[][] encodeResults(PhotonPipelineResult[] results) {
+    byte[][] packed = new byte[results.length][];
+    for (int i = 0; i < results.length; i++) {
+      Packet packet = new Packet(256);
+      PhotonPipelineResult.photonStruct.pack(packet, results[i]);
+      packed[i] = packet.getWrittenDataCopy();
+    }
+    return packed;
+  }
+
+  // Inverse of encodeResults, an empty packet decodes to an empty result
+  public default PhotonPipelineResult[] decodeResults(byte[][] packed) {
+    PhotonPipelineResult[] results = new PhotonPipelineResult[packed.length];
+    for (int i = 0; i < packed.length; i++) {
+      if (packed[i] == null || packed[i].length == 0) {
+        results[i] = new PhotonPipelineResult();
+      } else {
+        results[i] = PhotonPipelineResult.photonStruct.unpack(new Packet(packed[i]));
+      }
+    }
+    return results;
+  }
+
   // An array containing all the current position estimates
   // Ordered by camera index (estimate index i corresponds to camera i)
   // If a camera has no estimate or its estimate isn't good enough, it is set as new Pose2d()
@@ -102,8 +172,9 @@ public interface VisionIO {
     return latestTimestamp / count;
   }
 
+  // Shared by every IO so replay filters results exactly like the robot did
   public default boolean goodResult(PhotonPipelineResult result) {
-    return result.hasTargets();
+    return result.hasTargets() && result.getBestTarget().getPoseAmbiguity() < AMBIGUITY_THRESHOLD;
   }
 
   public default Pose3d[] getTargetsPositions(PhotonPipelineResult[] results) {
@@ -155,14 +226,35 @@ public interface VisionIO {
     }
     if (numTags == 0) return estStdDevs;
     avgDist /= numTags;
+
+    // Noise model fit from logs by VisionNoiseFitter
     // Decrease std devs if multiple targets are visible
-    if (numTags > 1) estStdDevs = kMultiTagStdDevs;
-    // Increase std devs based on (average) distance
-    // if (numTags == 1 && avgDist > 4) {
-    //   estStdDevs = VecBuilder.fill(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-    /*} else*/ estStdDevs = estStdDevs.times(1 + (avgDist * avgDist / 15));
+    // Increase std devs based on (average) distance, and ambiguity for single tags
+    double stdDev;
+    if (numTags > 1) {
+      stdDev =
+          kMultiTagBaseStdDev[camera]
+              * (1 + (avgDist * avgDist / kMultiTagDistanceDivisor[camera]));
+    } else {
+      double ambiguity = camera < inputs.bestAmbiguity.length ? inputs.bestAmbiguity[camera] : 0;
+      stdDev =
+          kSingleTagBaseStdDev[camera]
+                  * (1 + (avgDist * avgDist / kSingleTagDistanceDivisor[camera]))
+              + kSingleTagAmbiguityGain[camera] * ambiguity;
+    }
+
+    return VecBuilder.fill(stdDev, stdDev, Double.MAX_VALUE);
+  }
 
-    return estStdDevs;
+  // Ordered by camera index, 0 for cameras without targets
+  public default double[] getBestAmbiguities(PhotonPipelineResult[] results) {
+    double[] ambiguities = new double[results.length];
+    for (int i = 0; i < results.length; i++) {
+      if (results[i].hasTargets()) {
+        ambiguities[i] = results[i].getBestTarget().getPoseAmbiguity();
+      }
+    }
+    return ambiguities;
   }
 
   public default int[][] getCameraTargets(PhotonPipelineResult[] results) {
@@ -1,6 +1,5 @@
 package frc.robot.subsystems.vision;
 
-import static frc.robot.subsystems.vision.VisionConstants.AMBIGUITY_THRESHOLD;
 import static frc.robot.subsystems.vision.VisionConstants.camNames;
 import static frc.robot.subsystems.vision.VisionConstants.camsRobotToCam;
 import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
@@ -24,6 +23,7 @@ public class VisionIOPhoton implements VisionIO {
   private final PhotonCamera[] cameras = new PhotonCamera[numCameras];
   private final PhotonPoseEstimator[] cameraEstimators = new PhotonPoseEstimator[numCameras];
   private final PhotonPipelineResult[] cameraResults = new PhotonPipelineResult[numCameras];
+  private final MultiCameraPoseSolver jointSolver = new MultiCameraPoseSolver();
 
   private Pose2d lastEstimate = new Pose2d();
 
@@ -58,13 +58,16 @@ public class VisionIOPhoton implements VisionIO {
     inputs.timestamp = estimateLatestTimestamp(results);
 
     inputs.timestampArray = getTimestampArray(results);
+    inputs.results = encodeResults(results);
+    inputs.cameraMatrices = getCameraMatrices();
 
     if (hasEstimate(results)) {
-      // inputs.results = results;
       inputs.estimate = getEstimatesArray(results, photonEstimators);
       inputs.hasEstimate = true;
 
       inputs.cameraTargets = getCameraTargets(results);
+      inputs.bestAmbiguity = getBestAmbiguities(results);
+      updateJointEstimate(inputs, results, jointSolver, currentEstimate);
 
       Pose3d[] tags = getTargetsPositions(results);
       Logger.recordOutput("Vision/Targets3D", tags);
@@ -73,6 +76,7 @@ public class VisionIOPhoton implements VisionIO {
     } else {
       inputs.timestamp = inputs.timestamp;
       inputs.hasEstimate = false;
+      inputs.hasJointEstimate = false;
     }
 
     // Log if the robot code can see these cameras
@@ -102,6 +106,16 @@ public class VisionIOPhoton implements VisionIO {
     return cameraResults[camIndex];
   }
 
+  // Intrinsics are only known once a camera has connected and published its calibration
+  private double[][] getCameraMatrices() {
+    double[][] matrices = new double[numCameras][];
+    for (int i = 0; i < numCameras; i++) {
+      matrices[i] =
+          cameras[i].getCameraMatrix().map(matrix -> matrix.getData()).orElse(new double[0]);
+    }
+    return matrices;
+  }
+
   private PhotonPipelineResult[] getAprilTagResults() {
     if (killSideCams.get()) {
       PhotonPipelineResult cam1_result = getLatestResult(0);
@@ -147,23 +161,4 @@ public class VisionIOPhoton implements VisionIO {
 
     return cameraEstimators;
   }
-
-  @Override
-  public boolean goodResult(PhotonPipelineResult result) {
-    return result.hasTargets() && result.getBestTarget().getPoseAmbiguity() < AMBIGUITY_THRESHOLD
-    /*
-     * && kTagLayout.
-     * getTagPose(
-     * result.
-     * getBestTarget().
-     * getFiducialId())
-     * .get().toPose2d(
-     * ).getTranslation
-     * ()
-     * .getDistance(
-     * lastEstimate.
-     * getTranslation()
-     * ) < MAX_DISTANCE
-     */ ;
-  }
 }
@@ -0,0 +1,80 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.camsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+import static frc.robot.subsystems.vision.VisionConstants.numCameras;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+import org.littletonrobotics.junction.Logger;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Vision IO used when replaying a log. No cameras are read, instead the raw pipeline results logged
+ * by {@link VisionIOPhoton} are decoded and run back through fresh pose estimators, so strategies
+ * and filtering thresholds can be changed and tuned offline.
+ */
+public class VisionIOReplay implements VisionIO {
+  private final PhotonPoseEstimator[] camEstimators = new PhotonPoseEstimator[numCameras];
+  private final MultiCameraPoseSolver jointSolver = new MultiCameraPoseSolver();
+
+  /** Replays with the same estimator strategies used on the robot. */
+  public VisionIOReplay() {
+    this(PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR, PoseStrategy.LOWEST_AMBIGUITY);
+  }
+
+  /**
+   * Replays with different estimator strategies than the ones used on the robot.
+   *
+   * @param strategy The primary strategy for every camera's estimator
+   * @param multiTagFallbackStrategy The strategy used when the multi-tag result is missing
+   */
+  public VisionIOReplay(PoseStrategy strategy, PoseStrategy multiTagFallbackStrategy) {
+    for (int i = 0; i < numCameras; i++) {
+      camEstimators[i] = new PhotonPoseEstimator(kTagLayout, strategy, camsRobotToCam[i]);
+      camEstimators[i].setMultiTagFallbackStrategy(multiTagFallbackStrategy);
+    }
+  }
+
+  @Override
+  public void replayInputs(VisionIOInputs inputs, Pose2d currentEstimate, Rotation2d heading) {
+    PhotonPipelineResult[] results = decodeResults(inputs.results);
+
+    // Logs recorded with the side cameras killed only contain the front camera
+    if (results.length != numCameras) return;
+
+    for (PhotonPoseEstimator estimator : camEstimators) {
+      estimator.setReferencePose(currentEstimate);
+      estimator.addHeadingData(Timer.getFPGATimestamp(), heading);
+    }
+
+    inputs.estimate = new Pose2d[] {new Pose2d()};
+    inputs.timestamp = estimateLatestTimestamp(results);
+    inputs.timestampArray = getTimestampArray(results);
+
+    if (hasEstimate(results)) {
+      inputs.estimate = getEstimatesArray(results, camEstimators);
+      inputs.hasEstimate = true;
+
+      inputs.cameraTargets = getCameraTargets(results);
+      inputs.bestAmbiguity = getBestAmbiguities(results);
+      updateJointEstimate(inputs, results, jointSolver, currentEstimate);
+
+      Pose3d[] tags = getTargetsPositions(results);
+      Logger.recordOutput("Vision/Replay/Targets3D", tags);
+      Logger.recordOutput("Vision/Replay/TagCounts", tagCounts(results));
+    } else {
+      inputs.hasEstimate = false;
+      inputs.hasJointEstimate = false;
+    }
+
+    Logger.recordOutput("Vision/Replay/Estimates", inputs.estimate);
+    if (inputs.hasJointEstimate) {
+      Logger.recordOutput("Vision/Replay/JointEstimate", inputs.jointEstimate);
+    }
+  }
+}
@@ -1,16 +1,20 @@
 package frc.robot.subsystems.vision;
 
-import static frc.robot.subsystems.vision.VisionConstants.AMBIGUITY_THRESHOLD;
 import static frc.robot.subsystems.vision.VisionConstants.camNames;
 import static frc.robot.subsystems.vision.VisionConstants.camsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.kSimCameraFPS;
+import static frc.robot.subsystems.vision.VisionConstants.kSimFidelity;
 import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
 import static frc.robot.subsystems.vision.VisionConstants.numCameras;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import frc.robot.subsystems.vision.VisionConstants.SimFidelity;
+import java.util.Arrays;
 import org.littletonrobotics.junction.Logger;
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
@@ -25,8 +29,15 @@ public class VisionIOSim implements VisionIO {
   private final PhotonPoseEstimator[] camEstimators = new PhotonPoseEstimator[numCameras];
   private PhotonCameraSim[] camSims = new PhotonCameraSim[numCameras];
   private PhotonPipelineResult[] cameraResults = new PhotonPipelineResult[numCameras];
+  private final double[][] cameraMatrices = new double[numCameras][];
+  private final MultiCameraPoseSolver jointSolver = new MultiCameraPoseSolver();
 
-  private VisionSystemSim visionSim;
+  private final VisionSystemSim visionSim;
+
+  // The vision sim runs on its own thread so projecting every tag through every camera doesn't
+  // happen in the main loop. The main loop only hands it the latest odometry pose.
+  private final Notifier visionSimThread = new Notifier(this::updateVisionSim);
+  private volatile Pose2d latestOdometry = new Pose2d();
 
   private Pose2d lastEstimate = new Pose2d();
 
@@ -58,28 +69,46 @@ public class VisionIOSim implements VisionIO {
       camProps[i].setLatencyStdDevMs(15);
     }
 
-    camProps[0].setCalibration(480, 320, Rotation2d.fromDegrees(70));
-    camProps[0].setFPS(40);
-    camProps[1].setCalibration(480, 320, Rotation2d.fromDegrees(70));
-    camProps[1].setFPS(20);
-    camProps[2].setCalibration(480, 320, Rotation2d.fromDegrees(70));
-    camProps[2].setFPS(20);
-    camProps[3].setCalibration(480, 320, Rotation2d.fromDegrees(70));
-    camProps[3].setFPS(40);
+    for (int i = 0; i < numCameras; i++) {
+      camProps[i].setCalibration(480, 320, Rotation2d.fromDegrees(70));
+      camProps[i].setFPS(kSimCameraFPS[i]);
+      cameraMatrices[i] = camProps[i].getIntrinsics().getData();
+    }
 
     // Create a PhotonCameraSim which will update the linked PhotonCamera's values
     // with visible
     // targets.
     for (int i = 0; i < numCameras; i++) {
       camSims[i] = new PhotonCameraSim(cameras[i], camProps[i]);
+
+      // Rendering the camera streams is by far the most expensive part of the sim
+      boolean renderStreams = kSimFidelity == SimFidelity.FULL;
+      camSims[i].enableRawStream(renderStreams);
+      camSims[i].enableProcessedStream(renderStreams);
+      camSims[i].enableDrawWireframe(renderStreams);
+
       visionSim.addCamera(camSims[i], camsRobotToCam[i]);
     }
+
+    // Each PhotonCameraSim only produces a frame when its own FPS allows it and publishes it after
+    // its simulated latency, so running at the fastest camera's rate covers every camera
+    if (kSimFidelity != SimFidelity.OFF) {
+      visionSimThread.setName("VisionSim");
+      visionSimThread.startPeriodic(1.0 / Arrays.stream(kSimCameraFPS).max().getAsInt());
+    }
+  }
+
+  // The sim thread and the main thread both use the VisionSystemSim, so they take turns
+  private void updateVisionSim() {
+    synchronized (visionSim) {
+      visionSim.update(latestOdometry);
+    }
   }
 
   @Override
   public void updateInputs(VisionIOInputs inputs, Pose2d currentEstimate, Pose2d odometry) {
     lastEstimate = currentEstimate;
-    visionSim.update(odometry);
+    latestOdometry = odometry;
 
     for (PhotonPoseEstimator estimator : camEstimators) {
       estimator.setReferencePose(currentEstimate);
@@ -98,12 +127,16 @@ public class VisionIOSim implements VisionIO {
     inputs.timestamp = estimateLatestTimestamp(results);
 
     inputs.timestampArray = getTimestampArray(results);
+    inputs.results = encodeResults(results);
+    inputs.cameraMatrices = cameraMatrices;
 
     if (hasEstimate(results)) {
       inputs.estimate = getEstimatesArray(results, camEstimators);
       inputs.hasEstimate = true;
 
       inputs.cameraTargets = getCameraTargets(results);
+      inputs.bestAmbiguity = getBestAmbiguities(results);
+      updateJointEstimate(inputs, results, jointSolver, currentEstimate);
 
       Pose3d[] tags = getTargetsPositions(results);
       Logger.recordOutput("Vision/Targets3D", tags);
@@ -112,6 +145,7 @@ public class VisionIOSim implements VisionIO {
     } else {
       inputs.timestamp = inputs.timestamp;
       inputs.hasEstimate = false;
+      inputs.hasJointEstimate = false;
     }
 
     Logger.recordOutput("Vision/OrangeConnected", cameras[0].isConnected());
@@ -142,18 +176,8 @@ public class VisionIOSim implements VisionIO {
 
   /** A Field2d for visualizing our robot and objects on the field. */
   public Field2d getSimDebugField() {
-    return visionSim.getDebugField();
-  }
-
-  @Override
-  public boolean goodResult(PhotonPipelineResult result) {
-    return result.hasTargets() && result.getBestTarget().getPoseAmbiguity() < AMBIGUITY_THRESHOLD;
-    // && kTagLayout
-    //         .getTagPose(result.getBestTarget().getFiducialId())
-    //         .get()
-    //         .toPose2d()
-    //         .getTranslation()
-    //         .getDistance(lastEstimate.getTranslation())
-    //     < MAX_DISTANCE;
+    synchronized (visionSim) {
+      return visionSim.getDebugField();
+    }
   }
 }
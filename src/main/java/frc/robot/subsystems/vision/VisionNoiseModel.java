@@ -0,0 +1,17 @@
+package frc.robot.subsystems.vision;
+
+// Generated by frc.robot.util.VisionNoiseFitter, do not edit by hand.
+// Regenerate with: ./gradlew fitVisionNoise -Plogs=<log1.wpilog>,<log2.wpilog>
+//
+// std dev = base * (1 + distance^2 / divisor) + ambiguityGain * ambiguity
+// Arrays are ordered by camera index, like VisionConstants.camNames.
+public class VisionNoiseModel {
+  public static final double[] kSingleTagBaseStdDev = {1.0, 1.0, 1.0, 1.0};
+  public static final double[] kSingleTagDistanceDivisor = {15.0, 15.0, 15.0, 15.0};
+  public static final double[] kSingleTagAmbiguityGain = {0.0, 0.0, 0.0, 0.0};
+  public static final double[] kMultiTagBaseStdDev = {0.2, 0.2, 0.2, 0.2};
+  public static final double[] kMultiTagDistanceDivisor = {15.0, 15.0, 15.0, 15.0};
+
+  // Number of measurements each camera's model was fit from (0 = default values)
+  public static final int[] kSampleCounts = {0, 0, 0, 0};
+}
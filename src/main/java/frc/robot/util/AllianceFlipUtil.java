@@ -10,8 +10,80 @@ package frc.robot.util;
 import edu.wpi.first.math.geometry.*;
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.FieldConstants;
+import java.util.Arrays;
+import java.util.List;
 
 public class AllianceFlipUtil {
+  /** {@link FieldConstants} poses with the flip for one alliance already applied. */
+  public static class FlippedField {
+    /** The poses in {@link GoalDistanceFields#kGoalPoses}, in the same order */
+    public final List<Pose2d> goalPoses;
+    /** Our cages, facing the barge from our side of the field. Far, middle, close */
+    public final List<Pose2d> cages;
+    public final Translation2d reefCenter;
+    public final Pose2d leftCoralStationCenterFace;
+    public final Pose2d rightCoralStationCenterFace;
+
+    private FlippedField(boolean flip) {
+      goalPoses = flipIf(GoalDistanceFields.kGoalPoses, flip);
+      cages =
+          flipIf(
+              new Pose2d[] {
+                new Pose2d(FieldConstants.Barge.farCage, Rotation2d.kZero),
+                new Pose2d(FieldConstants.Barge.middleCage, Rotation2d.kZero),
+                new Pose2d(FieldConstants.Barge.closeCage, Rotation2d.kZero)
+              },
+              flip);
+      reefCenter = flipIf(FieldConstants.Reef.center, flip);
+      leftCoralStationCenterFace = flipIf(FieldConstants.CoralStation.leftCenterFace, flip);
+      rightCoralStationCenterFace = flipIf(FieldConstants.CoralStation.rightCenterFace, flip);
+    }
+
+    private static List<Pose2d> flipIf(Pose2d[] poses, boolean flip) {
+      return Arrays.stream(poses).map(pose -> flipIf(pose, flip)).toList();
+    }
+
+    private static Pose2d flipIf(Pose2d pose, boolean flip) {
+      return flip
+          ? new Pose2d(
+              flipIf(pose.getTranslation(), flip), pose.getRotation().rotateBy(Rotation2d.kPi))
+          : pose;
+    }
+
+    private static Translation2d flipIf(Translation2d translation, boolean flip) {
+      return flip
+          ? new Translation2d(
+              FieldConstants.fieldLength - translation.getX(),
+              FieldConstants.fieldWidth - translation.getY())
+          : translation;
+    }
+  }
+
+  private static final FlippedField kBlueField = new FlippedField(false);
+  private static final FlippedField kRedField = new FlippedField(true);
+
+  private static boolean isRed = false;
+
+  /**
+   * Reads the alliance from the driver station. Called once per loop before the scheduler runs, so
+   * everything else can check the alliance without querying the driver station.
+   */
+  public static void update() {
+    isRed =
+        DriverStation.getAlliance().isPresent()
+            && DriverStation.getAlliance().get() == DriverStation.Alliance.Red;
+  }
+
+  /** Returns the field constants for our alliance, built once so they never allocate. */
+  public static FlippedField getField() {
+    return getField(isRed);
+  }
+
+  /** Returns the field constants for an alliance, built once so they never allocate. */
+  public static FlippedField getField(boolean isRed) {
+    return isRed ? kRedField : kBlueField;
+  }
+
   public static double applyX(double x) {
     return shouldFlip() ? FieldConstants.fieldLength - x : x;
   }
@@ -21,7 +93,9 @@ public class AllianceFlipUtil {
   }
 
   public static Translation2d apply(Translation2d translation) {
-    return new Translation2d(applyX(translation.getX()), applyY(translation.getY()));
+    return shouldFlip()
+        ? new Translation2d(applyX(translation.getX()), applyY(translation.getY()))
+        : translation;
   }
 
   public static Rotation2d apply(Rotation2d rotation) {
@@ -35,8 +109,10 @@ public class AllianceFlipUtil {
   }
 
   public static Translation3d apply(Translation3d translation) {
-    return new Translation3d(
-        applyX(translation.getX()), applyY(translation.getY()), translation.getZ());
+    return shouldFlip()
+        ? new Translation3d(
+            applyX(translation.getX()), applyY(translation.getY()), translation.getZ())
+        : translation;
   }
 
   public static Rotation3d apply(Rotation3d rotation) {
@@ -44,11 +120,13 @@ public class AllianceFlipUtil {
   }
 
   public static Pose3d apply(Pose3d pose) {
-    return new Pose3d(apply(pose.getTranslation()), apply(pose.getRotation()));
+    return shouldFlip()
+        ? new Pose3d(apply(pose.getTranslation()), apply(pose.getRotation()))
+        : pose;
   }
 
+  /** Returns true on the red alliance, as of the last {@link #update()}. */
   public static boolean shouldFlip() {
-    return DriverStation.getAlliance().isPresent()
-        && DriverStation.getAlliance().get() == DriverStation.Alliance.Red;
+    return isRed;
   }
 }
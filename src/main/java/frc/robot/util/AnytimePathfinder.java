@@ -0,0 +1,463 @@
+package frc.robot.util;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.pathfinding.Pathfinder;
+import edu.wpi.first.math.Pair;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+/**
+ * Pathfinder that aims to have a path within a deadline, then keeps improving it in the background.
+ * Runs Anytime Repairing A* on the navgrid: a fast, inflated-heuristic search finds a path that may
+ * be a little longer than needed, and each following pass lowers the inflation and reuses the
+ * previous search until the path is optimal. If the first search is still running at the deadline,
+ * it switches to a greedy search, which usually finishes quickly but has no time bound of its own.
+ */
+public class AnytimePathfinder implements Pathfinder {
+  private static final double kInitialEpsilon = 3.0;
+  private static final double kEpsilonStep = 0.5;
+  private static final double kGreedyEpsilon = 100;
+  // Refined paths are only sent if they are this much shorter, so the robot isn't replanning for
+  // every tiny improvement
+  private static final double kMinImprovement = 0.02;
+  private static final int kCheckInterval = 128; // expansions between cancel and deadline checks
+
+  private static enum SearchResult {
+    DONE,
+    CANCELLED,
+    HIT_DEADLINE
+  }
+
+  private final PlannerIO io = new PlannerIO();
+  private final NavGrid grid;
+  private final Object lock = new Object();
+
+  // Latest request, guarded by lock
+  private Translation2d requestStart = new Translation2d();
+  private Translation2d requestGoal = new Translation2d();
+  private boolean[] requestObstacles;
+  private long requestVersion = 0;
+  private boolean hasGoal = false;
+  private double deadlineSeconds;
+
+  // Latest result, guarded by lock
+  private List<Translation2d> resultPoints = Collections.emptyList();
+  private boolean resultIsNew = false;
+  private double resultCost = 0;
+  private double resultComputeTime = 0;
+  private double resultEpsilon = 0;
+  private boolean resultHitDeadline = false;
+
+  /**
+   * Creates the pathfinder and starts its background thread.
+   *
+   * @param deadlineSeconds How long after a new start or goal a first path must be ready
+   */
+  public AnytimePathfinder(double deadlineSeconds) {
+    this.deadlineSeconds = deadlineSeconds;
+
+    NavGrid loadedGrid = null;
+    try {
+      loadedGrid = NavGrid.load();
+    } catch (IOException e) {
+      DriverStation.reportError("Failed to load navgrid for pathfinding", e.getStackTrace());
+    }
+    grid = loadedGrid;
+    requestObstacles = grid == null ? new boolean[0] : new boolean[grid.getCellCount()];
+
+    if (grid != null) {
+      Thread thread = new Thread(this::runPlanner, "AnytimePathfinder");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Changes how long a new request can take before a path must be ready. Shorter deadlines give
+   * faster but possibly longer first paths.
+   */
+  public void setDeadline(double deadlineSeconds) {
+    synchronized (lock) {
+      this.deadlineSeconds = deadlineSeconds;
+    }
+  }
+
+  @Override
+  public boolean isNewPathAvailable() {
+    if (!Logger.hasReplaySource()) {
+      io.updateIsNewPathAvailable();
+    }
+
+    Logger.processInputs("AnytimePathfinder", io);
+
+    return io.isNewPathAvailable;
+  }
+
+  @Override
+  public PathPlannerPath getCurrentPath(PathConstraints constraints, GoalEndState goalEndState) {
+    if (!Logger.hasReplaySource()) {
+      io.updateCurrentPathPoints();
+    }
+
+    Logger.processInputs("AnytimePathfinder", io);
+
+    if (io.currentPathPoints.isEmpty()) {
+      return null;
+    }
+
+    return GridPathUtil.toPath(io.currentPathPoints, constraints, goalEndState);
+  }
+
+  @Override
+  public void setStartPosition(Translation2d startPosition) {
+    if (Logger.hasReplaySource()) return;
+    synchronized (lock) {
+      requestStart = startPosition;
+      requestVersion++;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void setGoalPosition(Translation2d goalPosition) {
+    if (Logger.hasReplaySource()) return;
+    synchronized (lock) {
+      requestGoal = goalPosition;
+      hasGoal = true;
+      requestVersion++;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void setDynamicObstacles(
+      List<Pair<Translation2d, Translation2d>> obs, Translation2d currentRobotPos) {
+    if (Logger.hasReplaySource() || grid == null) return;
+
+    boolean[] obstacles = new boolean[grid.getCellCount()];
+    for (var box : obs) {
+      int corner1 = grid.getCell(box.getFirst());
+      int corner2 = grid.getCell(box.getSecond());
+      int minCol = Math.min(grid.getCol(corner1), grid.getCol(corner2));
+      int maxCol = Math.max(grid.getCol(corner1), grid.getCol(corner2));
+      int minRow = Math.min(grid.getRow(corner1), grid.getRow(corner2));
+      int maxRow = Math.max(grid.getRow(corner1), grid.getRow(corner2));
+      for (int row = minRow; row <= maxRow; row++) {
+        for (int col = minCol; col <= maxCol; col++) {
+          obstacles[row * grid.getCols() + col] = true;
+        }
+      }
+    }
+
+    synchronized (lock) {
+      if (Arrays.equals(obstacles, requestObstacles)) return;
+      requestObstacles = obstacles;
+      requestStart = currentRobotPos;
+      requestVersion++;
+      lock.notifyAll();
+    }
+  }
+
+  private void runPlanner() {
+    long plannedVersion = -1;
+    while (true) {
+      Translation2d start, goal;
+      boolean[] obstacles;
+      long version;
+      double deadline;
+      synchronized (lock) {
+        while (!hasGoal || requestVersion == plannedVersion) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        start = requestStart;
+        goal = requestGoal;
+        obstacles = requestObstacles;
+        version = requestVersion;
+        deadline = deadlineSeconds;
+      }
+      plannedVersion = version;
+      plan(start, goal, obstacles, version, deadline);
+    }
+  }
+
+  private boolean isCancelled(long version) {
+    synchronized (lock) {
+      return requestVersion != version;
+    }
+  }
+
+  /** Runs ARA* until the path is optimal or a newer request comes in. */
+  private void plan(
+      Translation2d start, Translation2d goal, boolean[] obstacles, long version, double deadline) {
+    long startNanos = System.nanoTime();
+    long deadlineNanos = startNanos + (long) (deadline * 1e9);
+
+    int startCell = grid.nearestFreeCell(grid.getCell(start), obstacles);
+    int goalCell = grid.nearestFreeCell(grid.getCell(goal), obstacles);
+    if (startCell < 0 || goalCell < 0) {
+      publish(version, Collections.emptyList(), 0, startNanos, 0, false);
+      return;
+    }
+
+    Search search = new Search(obstacles, goalCell, version);
+    search.g[startCell] = 0;
+    search.open(startCell, kInitialEpsilon);
+
+    double epsilon = kInitialEpsilon;
+    double bestCost = Double.POSITIVE_INFINITY;
+    boolean hitDeadline = false;
+
+    while (true) {
+      SearchResult result =
+          search.improvePath(epsilon, bestCost == Double.POSITIVE_INFINITY, deadlineNanos);
+      if (result == SearchResult.CANCELLED || isCancelled(version)) return;
+      if (result == SearchResult.HIT_DEADLINE) {
+        // Out of time without any path, finish the first search greedily
+        hitDeadline = true;
+        epsilon = kGreedyEpsilon;
+        search.rekey(epsilon);
+        continue;
+      }
+
+      double cost = search.g[goalCell];
+      if (Double.isInfinite(cost)) {
+        publish(version, Collections.emptyList(), 0, startNanos, epsilon, hitDeadline);
+        return;
+      }
+      if (cost < bestCost * (1 - kMinImprovement)) {
+        bestCost = cost;
+        List<Translation2d> points =
+            GridPathUtil.shortcut(grid, search.getCells(startCell), start, goal, obstacles);
+        publish(version, points, cost, startNanos, epsilon, hitDeadline);
+      }
+
+      if (epsilon <= 1) return;
+      epsilon = Math.max(1, Math.min(epsilon, kInitialEpsilon) - kEpsilonStep);
+      search.reopen(epsilon);
+    }
+  }
+
+  private void publish(
+      long version,
+      List<Translation2d> points,
+      double cost,
+      long startNanos,
+      double epsilon,
+      boolean hitDeadline) {
+    synchronized (lock) {
+      if (requestVersion != version) return; // A newer request is already being planned
+      resultPoints = points;
+      resultIsNew = true;
+      resultCost = cost;
+      resultComputeTime = (System.nanoTime() - startNanos) / 1e6;
+      resultEpsilon = epsilon;
+      resultHitDeadline = hitDeadline;
+    }
+  }
+
+  /** The state of one ARA* search, kept between passes so each pass only repairs the last one. */
+  private class Search {
+    final double[] g;
+    final int[] parent;
+    final boolean[] inOpen;
+    final boolean[] closed;
+    final boolean[] inconsistent;
+    final boolean[] obstacles;
+    final int goalCell;
+    final long version;
+    final List<Integer> inconsistentCells = new ArrayList<>();
+    PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+    Search(boolean[] obstacles, int goalCell, long version) {
+      int cells = grid.getCellCount();
+      g = new double[cells];
+      Arrays.fill(g, Double.POSITIVE_INFINITY);
+      parent = new int[cells];
+      Arrays.fill(parent, -1);
+      inOpen = new boolean[cells];
+      closed = new boolean[cells];
+      inconsistent = new boolean[cells];
+      this.obstacles = obstacles;
+      this.goalCell = goalCell;
+      this.version = version;
+    }
+
+    // Octile distance, the exact cost on an empty 8-connected grid
+    double heuristic(int cell) {
+      int dCol = Math.abs(grid.getCol(cell) - grid.getCol(goalCell));
+      int dRow = Math.abs(grid.getRow(cell) - grid.getRow(goalCell));
+      return (Math.max(dCol, dRow) + (Math.sqrt(2) - 1) * Math.min(dCol, dRow))
+          * grid.getNodeSize();
+    }
+
+    void open(int cell, double epsilon) {
+      inOpen[cell] = true;
+      open.add(new double[] {g[cell] + epsilon * heuristic(cell), cell});
+    }
+
+    // Expands cells until the goal's cost can't be improved with the current inflation
+    SearchResult improvePath(double epsilon, boolean firstSearch, long deadlineNanos) {
+      int expansions = 0;
+      while (!open.isEmpty()) {
+        double[] top = open.peek();
+        int cell = (int) top[1];
+        if (!inOpen[cell] || top[0] > g[cell] + epsilon * heuristic(cell) + 1e-9) {
+          open.poll(); // Stale entry, the cell was expanded or reached more cheaply since
+          continue;
+        }
+        if (top[0] >= g[goalCell]) break;
+
+        if (++expansions % kCheckInterval == 0) {
+          if (isCancelled(version)) return SearchResult.CANCELLED;
+          if (firstSearch && epsilon < kGreedyEpsilon && System.nanoTime() > deadlineNanos) {
+            return SearchResult.HIT_DEADLINE;
+          }
+        }
+
+        open.poll();
+        inOpen[cell] = false;
+        closed[cell] = true;
+        expand(cell, epsilon);
+      }
+      return SearchResult.DONE;
+    }
+
+    void expand(int cell, double epsilon) {
+      int col = grid.getCol(cell), row = grid.getRow(cell);
+      for (int dCol = -1; dCol <= 1; dCol++) {
+        for (int dRow = -1; dRow <= 1; dRow++) {
+          if (!canMove(col, row, dCol, dRow)) continue;
+          int next = (row + dRow) * grid.getCols() + col + dCol;
+          double step = (dCol != 0 && dRow != 0 ? Math.sqrt(2) : 1) * grid.getNodeSize();
+          if (g[cell] + step < g[next]) {
+            g[next] = g[cell] + step;
+            parent[next] = cell;
+            if (!closed[next]) {
+              open(next, epsilon);
+            } else if (!inconsistent[next]) {
+              inconsistent[next] = true;
+              inconsistentCells.add(next);
+            }
+          }
+        }
+      }
+    }
+
+    // Diagonal moves can't cut the corner of an obstacle
+    boolean canMove(int col, int row, int dCol, int dRow) {
+      if (dCol == 0 && dRow == 0) return false;
+      if (isBlocked(col + dCol, row + dRow)) return false;
+      return dCol == 0
+          || dRow == 0
+          || (!isBlocked(col + dCol, row) && !isBlocked(col, row + dRow));
+    }
+
+    boolean isBlocked(int col, int row) {
+      return grid.isObstacle(col, row) || obstacles[row * grid.getCols() + col];
+    }
+
+    // Rebuilds the open list keys after the inflation changes
+    void rekey(double epsilon) {
+      PriorityQueue<double[]> rekeyed = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+      for (int cell = 0; cell < inOpen.length; cell++) {
+        if (inOpen[cell]) rekeyed.add(new double[] {g[cell] + epsilon * heuristic(cell), cell});
+      }
+      open = rekeyed;
+    }
+
+    // Starts the next pass: cells improved after they were expanded go back in the open list
+    void reopen(double epsilon) {
+      for (int cell : inconsistentCells) {
+        inconsistent[cell] = false;
+        inOpen[cell] = true;
+      }
+      inconsistentCells.clear();
+      Arrays.fill(closed, false);
+      rekey(epsilon);
+    }
+
+    List<Integer> getCells(int startCell) {
+      List<Integer> cells = new ArrayList<>();
+      for (int cell = goalCell; cell != startCell; cell = parent[cell]) cells.add(cell);
+      cells.add(startCell);
+      Collections.reverse(cells);
+      return cells;
+    }
+  }
+
+  private class PlannerIO implements LoggableInputs {
+    public boolean isNewPathAvailable = false;
+    public List<Translation2d> currentPathPoints = Collections.emptyList();
+    public double pathCost = 0;
+    public double computeTimeMs = 0;
+    public double epsilon = 0;
+    public boolean hitDeadline = false;
+
+    // Changes with the path, which is only logged when it changes
+    private int pathVersion = 0;
+    private int loggedPathVersion = -1;
+
+    @Override
+    public void toLog(LogTable table) {
+      table.put("IsNewPathAvailable", isNewPathAvailable);
+      table.put("PathVersion", pathVersion);
+      // Values stay in the table until overwritten, so the path only needs writing when it changes
+      if (loggedPathVersion != pathVersion) {
+        table.put("CurrentPathPoints", currentPathPoints.toArray(new Translation2d[0]));
+        loggedPathVersion = pathVersion;
+      }
+      table.put("PathCost", pathCost);
+      table.put("ComputeTimeMs", computeTimeMs);
+      table.put("Epsilon", epsilon);
+      table.put("HitDeadline", hitDeadline);
+    }
+
+    @Override
+    public void fromLog(LogTable table) {
+      isNewPathAvailable = table.get("IsNewPathAvailable", false);
+      int version = table.get("PathVersion", 0);
+      if (version != pathVersion) {
+        currentPathPoints = List.of(table.get("CurrentPathPoints", new Translation2d[0]));
+        pathVersion = version;
+      }
+      pathCost = table.get("PathCost", 0.0);
+      computeTimeMs = table.get("ComputeTimeMs", 0.0);
+      epsilon = table.get("Epsilon", 0.0);
+      hitDeadline = table.get("HitDeadline", false);
+    }
+
+    public void updateIsNewPathAvailable() {
+      synchronized (lock) {
+        isNewPathAvailable = resultIsNew;
+      }
+    }
+
+    public void updateCurrentPathPoints() {
+      synchronized (lock) {
+        // Every published path is a new list
+        if (resultPoints != currentPathPoints) pathVersion++;
+        currentPathPoints = resultPoints;
+        pathCost = resultCost;
+        computeTimeMs = resultComputeTime;
+        epsilon = resultEpsilon;
+        hitDeadline = resultHitDeadline;
+        resultIsNew = false;
+      }
+    }
+  }
+}
@@ -0,0 +1,458 @@
+package frc.robot.util;
+
+import static frc.robot.subsystems.vision.VisionConstants.camNames;
+import static frc.robot.subsystems.vision.VisionConstants.camsRobotToCam;
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+import static frc.robot.subsystems.vision.VisionConstants.numCameras;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.util.Units;
+import frc.robot.subsystems.vision.VisionIO;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import org.ejml.simple.SimpleMatrix;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.wpilog.WPILOGReader;
+import org.photonvision.estimation.TargetModel;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Offline tool that refines the camera extrinsics ({@code camsRobotToCam}) from match logs by
+ * bundle adjustment. Each logged camera frame adds the reprojection error of every tag corner it
+ * saw. The robot pose of each frame is also a free variable, held near logged odometry by a prior,
+ * and is eliminated per frame with a Schur complement so only a 6x6 system per camera is kept.
+ *
+ * <p>Every Levenberg-Marquardt iteration streams the logs again instead of holding the frames in
+ * memory, so hour-long practice logs work fine. Run with {@code ./gradlew calibrateCameras
+ * -Plogs=<log1.wpilog>,<log2.wpilog>}. The refined transforms are printed with the before and after
+ * reprojection error, ready to be copied into VisionConstants.
+ */
+public class CameraExtrinsicCalibrator {
+  private static final int kMaxIterations = 15;
+  private static final double kConvergence = 1e-6;
+
+  // How much the robot pose of a frame can move away from odometry
+  private static final double kOdometryStdDevMeters = 0.05;
+  private static final double kOdometryStdDevRadians = Units.degreesToRadians(2);
+
+  private static final double kHuberPixels = 2.0;
+  // Corners that can't be projected count as this far off, so every step is judged on every frame
+  private static final double kInvalidCornerPixels = 100.0;
+  private static final double kJacobianStep = 1e-6;
+  private static final int kPoseRefineSteps = 2;
+
+  // Frames are held back until odometry has been logged past them so it can be interpolated
+  private static final double kOdometryLagSeconds = 0.05;
+
+  private static class Frame {
+    final int camera;
+    final double timestamp;
+    final double[] cameraMatrix;
+    final List<Translation3d> fieldPoints = new ArrayList<>();
+    final List<TargetCorner> corners = new ArrayList<>();
+
+    Frame(int camera, double timestamp, double[] cameraMatrix) {
+      this.camera = camera;
+      this.timestamp = timestamp;
+      this.cameraMatrix = cameraMatrix;
+    }
+  }
+
+  // Sums collected over one pass through the logs, for one camera
+  private static class CameraSums {
+    final SimpleMatrix hessian = new SimpleMatrix(6, 6);
+    final SimpleMatrix gradient = new SimpleMatrix(6, 1);
+    double cost = 0;
+    double squaredPixelError = 0;
+    int corners = 0;
+    int frames = 0;
+    int invalidFrames = 0;
+
+    double rmsPixels() {
+      return corners == 0 ? 0 : Math.sqrt(squaredPixelError / corners);
+    }
+  }
+
+  private final String[] logs;
+  private final VisionIO decoder = new VisionIO() {};
+  private final TimeInterpolatableBuffer<Pose2d> odometryHistory =
+      TimeInterpolatableBuffer.createBuffer(2.0);
+  private boolean hasVisionInputs = false;
+
+  private CameraExtrinsicCalibrator(String[] logs) {
+    this.logs = logs;
+  }
+
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      System.err.println("Usage: ./gradlew calibrateCameras -Plogs=<log1.wpilog>,<log2.wpilog>");
+      System.exit(1);
+    }
+    new CameraExtrinsicCalibrator(args).run();
+  }
+
+  // Only calibrate from logs that were recorded with vision inputs logged
+  private static void exitWithoutVisionInputs(String path) {
+    System.err.println(
+        path
+            + " has no Vision/results or Vision/cameraMatrices inputs. Vision input logging must"
+            + " be enabled (Logger.processInputs(\"Vision\", ...) in Drive) to calibrate.");
+    System.exit(1);
+  }
+
+  private void run() {
+    Transform3d[] current = camsRobotToCam.clone();
+    double[] lambda = new double[numCameras];
+    Arrays.fill(lambda, 1e-3);
+    boolean[] converged = new boolean[numCameras];
+
+    CameraSums[] accepted = pass(current);
+    CameraSums[] initial = accepted;
+
+    for (int iteration = 0; iteration < kMaxIterations; iteration++) {
+      Transform3d[] candidate = current.clone();
+      boolean anyStep = false;
+
+      for (int i = 0; i < numCameras; i++) {
+        if (converged[i] || accepted[i].frames == 0) continue;
+        Optional<double[]> step = solveStep(accepted[i], lambda[i]);
+        if (step.isEmpty()) {
+          converged[i] = true;
+          continue;
+        }
+        candidate[i] = applyStep(current[i], step.get());
+        anyStep = true;
+      }
+      if (!anyStep) break;
+
+      System.out.println("Iteration " + (iteration + 1));
+      CameraSums[] sums = pass(candidate);
+
+      // Cameras don't share any variables, so each one accepts or rejects its own step
+      for (int i = 0; i < numCameras; i++) {
+        if (candidate[i] == current[i]) continue;
+        if (sums[i].cost < accepted[i].cost) {
+          double change = Math.abs(accepted[i].cost - sums[i].cost) / accepted[i].cost;
+          current[i] = candidate[i];
+          accepted[i] = sums[i];
+          lambda[i] /= 10;
+          if (change < kConvergence) converged[i] = true;
+        } else {
+          lambda[i] *= 10;
+          if (lambda[i] > 1e8) converged[i] = true;
+        }
+      }
+    }
+
+    report(initial, accepted, current);
+  }
+
+  /** Streams every log once, collecting the reduced normal equations for each camera. */
+  private CameraSums[] pass(Transform3d[] robotToCams) {
+    CameraSums[] sums = new CameraSums[numCameras];
+    for (int i = 0; i < numCameras; i++) sums[i] = new CameraSums();
+
+    for (String log : logs) {
+      WPILOGReader reader = new WPILOGReader(log);
+      reader.start();
+      LogTable table = new LogTable(0);
+
+      odometryHistory.clear();
+      Queue<Frame> pending = new ArrayDeque<>();
+      double[] lastTimestamps = new double[numCameras];
+      hasVisionInputs = false;
+
+      while (reader.updateTable(table)) {
+        double timestamp = table.getTimestamp() / 1e6;
+        odometryHistory.addSample(timestamp, table.get("RealOutputs/Odometry/Robot", new Pose2d()));
+
+        readFrames(table, lastTimestamps, pending);
+
+        while (!pending.isEmpty() && pending.peek().timestamp + kOdometryLagSeconds <= timestamp) {
+          Frame frame = pending.poll();
+          Optional<Pose2d> odometry = odometryHistory.getSample(frame.timestamp);
+          if (odometry.isPresent()) {
+            addFrame(frame, odometry.get(), robotToCams[frame.camera], sums[frame.camera]);
+          }
+        }
+      }
+      if (!hasVisionInputs) exitWithoutVisionInputs(log);
+    }
+    return sums;
+  }
+
+  private void readFrames(LogTable table, double[] lastTimestamps, Queue<Frame> pending) {
+    if (table.get("Vision/results") == null || table.get("Vision/cameraMatrices") == null) return;
+    hasVisionInputs = true;
+
+    PhotonPipelineResult[] results =
+        decoder.decodeResults(table.get("Vision/results", new byte[0][]));
+    double[][] cameraMatrices = table.get("Vision/cameraMatrices", new double[0][]);
+    if (results.length != numCameras || cameraMatrices.length != numCameras) return;
+
+    for (int i = 0; i < numCameras; i++) {
+      PhotonPipelineResult result = results[i];
+      double timestamp = result.getTimestampSeconds();
+
+      // Inputs are logged every cycle, only use each camera frame once
+      if (timestamp == lastTimestamps[i]) continue;
+      lastTimestamps[i] = timestamp;
+      if (!result.hasTargets() || cameraMatrices[i].length != 9) continue;
+
+      Frame frame = new Frame(i, timestamp, cameraMatrices[i]);
+      for (PhotonTrackedTarget target : result.getTargets()) {
+        Optional<Pose3d> tagPose = kTagLayout.getTagPose(target.getFiducialId());
+        List<TargetCorner> corners = target.getDetectedCorners();
+        if (tagPose.isEmpty() || corners.size() != 4) continue;
+
+        frame.fieldPoints.addAll(TargetModel.kAprilTag36h11.getFieldVertices(tagPose.get()));
+        frame.corners.addAll(corners);
+      }
+      if (!frame.corners.isEmpty()) pending.add(frame);
+    }
+  }
+
+  /**
+   * Adds one frame to a camera's sums. The robot pose of the frame is first refined with the
+   * camera held fixed, then eliminated from the frame's normal equations.
+   */
+  private static void addFrame(
+      Frame frame, Pose2d odometry, Transform3d robotToCam, CameraSums sums) {
+    double[] priorWeights = {
+      1 / (kOdometryStdDevMeters * kOdometryStdDevMeters),
+      1 / (kOdometryStdDevMeters * kOdometryStdDevMeters),
+      1 / (kOdometryStdDevRadians * kOdometryStdDevRadians)
+    };
+
+    // Pose-only Gauss-Newton steps, so the camera is judged at the best robot pose for it
+    Pose2d robotPose = odometry;
+    for (int step = 0; step < kPoseRefineSteps; step++) {
+      SimpleMatrix[] system = linearize(frame, robotPose, odometry, robotToCam, priorWeights);
+      if (system == null) break;
+      SimpleMatrix poseStep = system[0].solve(system[3]).negative();
+      Pose2d refined = applyPoseStep(robotPose, poseStep);
+      if (residuals(frame, refined, robotToCam) == null) break;
+      robotPose = refined;
+    }
+
+    SimpleMatrix[] system = linearize(frame, robotPose, odometry, robotToCam, priorWeights);
+    if (system == null) {
+      // Dropping the frame would compare costs over different frames, so it costs a fixed amount
+      sums.cost += frame.corners.size() * huberCost(kInvalidCornerPixels);
+      sums.invalidFrames++;
+      return;
+    }
+    SimpleMatrix hpp = system[0], hpc = system[1], hcc = system[2], gp = system[3], gc = system[4];
+
+    // Schur complement: H = Hcc - Hcp Hpp^-1 Hpc, g = gc - Hcp Hpp^-1 gp
+    SimpleMatrix hppInv = hpp.invert();
+    SimpleMatrix hcp = hpc.transpose();
+    sums.hessian.setTo(sums.hessian.plus(hcc.minus(hcp.mult(hppInv).mult(hpc))));
+    sums.gradient.setTo(sums.gradient.plus(gc.minus(hcp.mult(hppInv).mult(gp))));
+
+    double[] residuals = residuals(frame, robotPose, robotToCam);
+    for (int c = 0; c < frame.corners.size(); c++) {
+      double norm = Math.hypot(residuals[2 * c], residuals[2 * c + 1]);
+      sums.cost += huberCost(norm);
+      sums.squaredPixelError += norm * norm;
+    }
+    sums.cost += priorCost(robotPose, odometry, priorWeights);
+    sums.corners += frame.corners.size();
+    sums.frames++;
+  }
+
+  /**
+   * Builds the normal equations of one frame.
+   *
+   * @return {Hpp (3x3), Hpc (3x6), Hcc (6x6), gp (3x1), gc (6x1)}, or null if a corner is behind
+   *     the camera
+   */
+  private static SimpleMatrix[] linearize(
+      Frame frame,
+      Pose2d robotPose,
+      Pose2d odometry,
+      Transform3d robotToCam,
+      double[] priorWeights) {
+    double[] base = residuals(frame, robotPose, robotToCam);
+    if (base == null) return null;
+
+    // Numerical jacobians, columns 0-2 are the robot pose and 3-8 the camera transform
+    int rows = base.length;
+    double[][] jacobian = new double[9][];
+    for (int p = 0; p < 9; p++) {
+      double[] delta = new double[9];
+      delta[p] = kJacobianStep;
+      Pose2d perturbedPose =
+          applyPoseStep(robotPose, new SimpleMatrix(3, 1, true, delta[0], delta[1], delta[2]));
+      Transform3d perturbedCam = applyStep(robotToCam, Arrays.copyOfRange(delta, 3, 9));
+      double[] perturbed = residuals(frame, perturbedPose, perturbedCam);
+      if (perturbed == null) return null;
+
+      jacobian[p] = new double[rows];
+      for (int r = 0; r < rows; r++) jacobian[p][r] = (perturbed[r] - base[r]) / kJacobianStep;
+    }
+
+    SimpleMatrix h = new SimpleMatrix(9, 9);
+    SimpleMatrix g = new SimpleMatrix(9, 1);
+    for (int c = 0; c < rows / 2; c++) {
+      // Huber weighting so a single bad corner can't drag the whole solution
+      double norm = Math.hypot(base[2 * c], base[2 * c + 1]);
+      double weight = norm <= kHuberPixels ? 1 : kHuberPixels / norm;
+      for (int r = 2 * c; r < 2 * c + 2; r++) {
+        for (int i = 0; i < 9; i++) {
+          for (int j = 0; j < 9; j++) {
+            h.set(i, j, h.get(i, j) + weight * jacobian[i][r] * jacobian[j][r]);
+          }
+          g.set(i, 0, g.get(i, 0) + weight * jacobian[i][r] * base[r]);
+        }
+      }
+    }
+
+    // Odometry prior on the robot pose
+    double[] poseError = poseError(robotPose, odometry);
+    for (int i = 0; i < 3; i++) {
+      h.set(i, i, h.get(i, i) + priorWeights[i]);
+      g.set(i, 0, g.get(i, 0) + priorWeights[i] * poseError[i]);
+    }
+
+    return new SimpleMatrix[] {
+      h.extractMatrix(0, 3, 0, 3),
+      h.extractMatrix(0, 3, 3, 9),
+      h.extractMatrix(3, 9, 3, 9),
+      g.extractMatrix(0, 3, 0, 1),
+      g.extractMatrix(3, 9, 0, 1)
+    };
+  }
+
+  /** Reprojection error of every corner in pixels (u, v interleaved), null if one is behind. */
+  private static double[] residuals(Frame frame, Pose2d robotPose, Transform3d robotToCam) {
+    Pose3d cameraPose = new Pose3d(robotPose).transformBy(robotToCam);
+    double fx = frame.cameraMatrix[0], cx = frame.cameraMatrix[2];
+    double fy = frame.cameraMatrix[4], cy = frame.cameraMatrix[5];
+
+    double[] residuals = new double[frame.corners.size() * 2];
+    for (int c = 0; c < frame.corners.size(); c++) {
+      Pose3d fieldPoint = new Pose3d(frame.fieldPoints.get(c), new Rotation3d());
+      Translation3d point = fieldPoint.relativeTo(cameraPose).getTranslation();
+      if (point.getX() <= 0.05) return null;
+
+      // Pinhole projection, camera x forward, y left, z up; image x right, image y down
+      residuals[2 * c] = cx - fx * point.getY() / point.getX() - frame.corners.get(c).x;
+      residuals[2 * c + 1] = cy - fy * point.getZ() / point.getX() - frame.corners.get(c).y;
+    }
+    return residuals;
+  }
+
+  // Solves (H + lambda diag(H)) step = -g, empty if the step is too small to matter
+  private static Optional<double[]> solveStep(CameraSums sums, double lambda) {
+    SimpleMatrix damped = sums.hessian.copy();
+    for (int i = 0; i < 6; i++) damped.set(i, i, damped.get(i, i) * (1 + lambda));
+
+    SimpleMatrix step;
+    try {
+      step = damped.solve(sums.gradient).negative();
+    } catch (RuntimeException e) {
+      return Optional.empty();
+    }
+
+    double[] values = new double[6];
+    double size = 0;
+    for (int i = 0; i < 6; i++) {
+      values[i] = step.get(i, 0);
+      size += Math.abs(values[i]);
+    }
+    return size < kConvergence ? Optional.empty() : Optional.of(values);
+  }
+
+  // Step is {x, y, z, roll, pitch, yaw}, applied in the camera's own frame
+  private static Transform3d applyStep(Transform3d robotToCam, double[] step) {
+    return robotToCam.plus(
+        new Transform3d(
+            new Translation3d(step[0], step[1], step[2]),
+            new Rotation3d(step[3], step[4], step[5])));
+  }
+
+  private static Pose2d applyPoseStep(Pose2d pose, SimpleMatrix step) {
+    return new Pose2d(
+        pose.getX() + step.get(0, 0),
+        pose.getY() + step.get(1, 0),
+        pose.getRotation().plus(new Rotation2d(step.get(2, 0))));
+  }
+
+  private static double[] poseError(Pose2d pose, Pose2d odometry) {
+    return new double[] {
+      pose.getX() - odometry.getX(),
+      pose.getY() - odometry.getY(),
+      pose.getRotation().minus(odometry.getRotation()).getRadians()
+    };
+  }
+
+  private static double priorCost(Pose2d pose, Pose2d odometry, double[] priorWeights) {
+    double[] error = poseError(pose, odometry);
+    double cost = 0;
+    for (int i = 0; i < 3; i++) cost += 0.5 * priorWeights[i] * error[i] * error[i];
+    return cost;
+  }
+
+  private static double huberCost(double norm) {
+    return norm <= kHuberPixels ? 0.5 * norm * norm : kHuberPixels * (norm - 0.5 * kHuberPixels);
+  }
+
+  private static void report(CameraSums[] before, CameraSums[] after, Transform3d[] refined) {
+    System.out.println();
+    for (int i = 0; i < numCameras; i++) {
+      System.out.printf(
+          Locale.US,
+          "%s: %d frames (%d unusable), reprojection RMS %.3f px -> %.3f px%n",
+          camNames[i],
+          after[i].frames,
+          after[i].invalidFrames,
+          before[i].rmsPixels(),
+          after[i].rmsPixels());
+      if (after[i].frames == 0) continue;
+
+      Transform3d original = camsRobotToCam[i];
+      Transform3d change = original.inverse().plus(refined[i]);
+      System.out.printf(
+          Locale.US,
+          "  moved %.1f mm, rotated %.2f deg%n",
+          change.getTranslation().getNorm() * 1000,
+          Units.radiansToDegrees(change.getRotation().getAngle()));
+    }
+
+    System.out.println();
+    System.out.println("public static final Transform3d[] camsRobotToCam = {");
+    for (Transform3d transform : refined) {
+      System.out.printf(
+          Locale.US,
+          "  new Transform3d(%n"
+              + "      new Translation3d(%n"
+              + "          Units.inchesToMeters(%.4f), Units.inchesToMeters(%.4f),"
+              + " Units.inchesToMeters(%.4f)),%n"
+              + "      new Rotation3d(%n"
+              + "          Units.degreesToRadians(%.3f),"
+              + " Units.degreesToRadians(%.3f),"
+              + " Units.degreesToRadians(%.3f))),%n",
+          Units.metersToInches(transform.getX()),
+          Units.metersToInches(transform.getY()),
+          Units.metersToInches(transform.getZ()),
+          Units.radiansToDegrees(transform.getRotation().getX()),
+          Units.radiansToDegrees(transform.getRotation().getY()),
+          Units.radiansToDegrees(transform.getRotation().getZ()));
+    }
+    System.out.println("};");
+  }
+}
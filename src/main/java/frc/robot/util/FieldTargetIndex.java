@@ -0,0 +1,90 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * Every pose the robot aligns to, flipped for our alliance. The poses are only rebuilt when the
+ * alliance changes, and the queries don't allocate, so alignment commands can run them every loop.
+ *
+ * <p>Targets are numbered like the goals in {@link GoalDistanceFields}: the 12 reef scoring
+ * positions, both coral stations, the processor, then our three cages.
+ */
+public class FieldTargetIndex {
+  /** The kinds of targets, each a range of target indices. */
+  public static enum TargetType {
+    REEF(0, 12),
+    CORAL_STATION(12, 2),
+    PROCESSOR(14, 1),
+    CAGE(15, 3);
+
+    public final int first;
+    public final int count;
+
+    TargetType(int first, int count) {
+      this.first = first;
+      this.count = count;
+    }
+  }
+
+  private static final int kTargetCount = 18;
+
+  private final Pose2d[] targets = new Pose2d[kTargetCount];
+  // Copies of the poses as plain numbers so queries don't touch any geometry objects
+  private final double[] targetX = new double[kTargetCount];
+  private final double[] targetY = new double[kTargetCount];
+  private boolean isRed = false;
+  private boolean built = false;
+
+  /**
+   * Rebuilds the targets if the alliance changed. Should be called once per loop.
+   *
+   * @param isRed Whether we are on the red alliance
+   */
+  public void update(boolean isRed) {
+    if (built && isRed == this.isRed) return;
+
+    // Same reef, coral station and processor poses the pathfinder drives to, then our cages
+    AllianceFlipUtil.FlippedField field = AllianceFlipUtil.getField(isRed);
+    for (int i = 0; i < kTargetCount; i++) {
+      targets[i] =
+          i < TargetType.CAGE.first
+              ? field.goalPoses.get(i)
+              : field.cages.get(i - TargetType.CAGE.first);
+      targetX[i] = targets[i].getX();
+      targetY[i] = targets[i].getY();
+    }
+    this.isRed = isRed;
+    built = true;
+  }
+
+  /** Returns the pose of a target for our alliance. */
+  public Pose2d getPose(int target) {
+    return targets[target];
+  }
+
+  /**
+   * Finds the closest target of a type.
+   *
+   * @param type The type of target
+   * @param robotPose The robot pose
+   * @return The index of the closest target
+   */
+  public int nearest(TargetType type, Pose2d robotPose) {
+    int closest = type.first;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int i = type.first; i < type.first + type.count; i++) {
+      double distance = squaredDistance(i, robotPose);
+      if (distance < closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  private double squaredDistance(int target, Pose2d robotPose) {
+    double dx = targetX[target] - robotPose.getX();
+    double dy = targetY[target] - robotPose.getY();
+    return dx * dx + dy * dy;
+  }
+}
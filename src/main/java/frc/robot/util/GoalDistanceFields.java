@@ -0,0 +1,194 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.FieldConstants;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Distance-to-goal fields over the navgrid for every fixed goal we drive to: the 12 reef scoring
+ * positions, both coral stations and the processor, for both alliances. Each field is built once
+ * with Dijkstra from the goal outward, so a path from anywhere on the field is found by walking
+ * downhill through the field, with no search at all.
+ */
+public class GoalDistanceFields {
+  /** Goal poses with a blue alliance origin, reef first, then coral stations, then processor */
+  public static final Pose2d[] kGoalPoses = getGoalPoses();
+
+  public static final Translation2d[] kGoals =
+      Arrays.stream(kGoalPoses).map(Pose2d::getTranslation).toArray(Translation2d[]::new);
+
+  public static final int kFirstCoralStationGoal = 12;
+  public static final int kProcessorGoal = 14;
+
+  private static final double kDiagonalCost = Math.sqrt(2);
+
+  private static GoalDistanceFields shared = null;
+
+  private final NavGrid grid;
+  // [alliance][goal][cell], blue is 0 and red is 1. Infinite where the goal can't be reached.
+  private final float[][][] distances;
+  private final int[][] goalCells;
+
+  /**
+   * Builds every field. This takes a few milliseconds per field, so it should be done at startup.
+   *
+   * @param grid The static obstacle grid
+   */
+  public GoalDistanceFields(NavGrid grid) {
+    this.grid = grid;
+    distances = new float[2][kGoals.length][];
+    goalCells = new int[2][kGoals.length];
+
+    for (int alliance = 0; alliance < 2; alliance++) {
+      for (int goal = 0; goal < kGoals.length; goal++) {
+        Translation2d position = getGoalPose(goal, alliance == 1).getTranslation();
+        goalCells[alliance][goal] = grid.nearestFreeCell(grid.getCell(position));
+        distances[alliance][goal] = buildField(goalCells[alliance][goal]);
+      }
+    }
+  }
+
+  /**
+   * Returns the fields for the deployed navgrid, shared by everything that uses them. The first
+   * call builds them, so it should be made from a background thread.
+   *
+   * @throws IOException If the navgrid can't be loaded
+   */
+  public static synchronized GoalDistanceFields getShared() throws IOException {
+    if (shared == null) shared = new GoalDistanceFields(NavGrid.load());
+    return shared;
+  }
+
+  /**
+   * Finds the fixed goal at a position, if there is one.
+   *
+   * @param position The goal position on the field
+   * @param isRed Whether the position is for the red alliance
+   * @return The goal index, or -1 if the position isn't within a cell of any fixed goal
+   */
+  public int findGoal(Translation2d position, boolean isRed) {
+    for (int goal = 0; goal < kGoals.length; goal++) {
+      Translation2d goalPosition = getGoalPose(goal, isRed).getTranslation();
+      if (goalPosition.getDistance(position) < grid.getNodeSize()) return goal;
+    }
+    return -1;
+  }
+
+  /** Returns the pose the robot should end at for a goal, facing the goal. */
+  public static Pose2d getGoalPose(int goal, boolean isRed) {
+    return AllianceFlipUtil.getField(isRed).goalPoses.get(goal);
+  }
+
+  /** Returns the distance from a position to a goal along the grid, infinite if unreachable. */
+  public double getDistance(Translation2d position, int goal, boolean isRed) {
+    int cell = grid.nearestFreeCell(grid.getCell(position));
+    return cell < 0 ? Double.POSITIVE_INFINITY : distances[isRed ? 1 : 0][goal][cell];
+  }
+
+  /**
+   * Finds a path to a goal by following the field downhill, then removing every corner that can be
+   * skipped with a straight line.
+   *
+   * @param start The start position on the field
+   * @param goal The goal index
+   * @param isRed Whether to use the red alliance goal
+   * @return The path from start to goal, or an empty list if the goal can't be reached
+   */
+  public List<Translation2d> getPath(Translation2d start, int goal, boolean isRed) {
+    float[] field = distances[isRed ? 1 : 0][goal];
+    int goalCell = goalCells[isRed ? 1 : 0][goal];
+    int cell = grid.nearestFreeCell(grid.getCell(start));
+    if (cell < 0 || Float.isInfinite(field[cell])) return List.of();
+
+    // Every cell except the goal has a neighbor that is strictly closer, so this always ends
+    List<Integer> cells = new ArrayList<>();
+    cells.add(cell);
+    while (cell != goalCell) {
+      cell = downhill(field, cell);
+      cells.add(cell);
+    }
+
+    return GridPathUtil.shortcut(
+        grid, cells, start, getGoalPose(goal, isRed).getTranslation(), null);
+  }
+
+  // The neighbor with the lowest distance, which is the next step toward the goal
+  private int downhill(float[] field, int cell) {
+    int col = grid.getCol(cell), row = grid.getRow(cell);
+    int best = cell;
+    for (int dCol = -1; dCol <= 1; dCol++) {
+      for (int dRow = -1; dRow <= 1; dRow++) {
+        if (!canMove(col, row, dCol, dRow)) continue;
+        int next = (row + dRow) * grid.getCols() + col + dCol;
+        if (field[next] < field[best]) best = next;
+      }
+    }
+    return best;
+  }
+
+  // Dijkstra outward from the goal over 8-connected cells
+  private float[] buildField(int goalCell) {
+    float[] field = new float[grid.getCellCount()];
+    Arrays.fill(field, Float.POSITIVE_INFINITY);
+    if (goalCell < 0) return field;
+
+    PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+    field[goalCell] = 0;
+    queue.add(new double[] {0, goalCell});
+
+    while (!queue.isEmpty()) {
+      double[] entry = queue.poll();
+      int cell = (int) entry[1];
+      if (entry[0] > field[cell]) continue; // Already found a shorter way here
+
+      int col = grid.getCol(cell), row = grid.getRow(cell);
+      for (int dCol = -1; dCol <= 1; dCol++) {
+        for (int dRow = -1; dRow <= 1; dRow++) {
+          if (!canMove(col, row, dCol, dRow)) continue;
+          int next = (row + dRow) * grid.getCols() + col + dCol;
+          double step = (dCol != 0 && dRow != 0 ? kDiagonalCost : 1) * grid.getNodeSize();
+          double distance = field[cell] + step;
+          if (distance < field[next]) {
+            field[next] = (float) distance;
+            queue.add(new double[] {distance, next});
+          }
+        }
+      }
+    }
+    return field;
+  }
+
+  // Diagonal moves can't cut the corner of an obstacle, same as PathPlanner's pathfinder
+  private boolean canMove(int col, int row, int dCol, int dRow) {
+    if (dCol == 0 && dRow == 0) return false;
+    if (grid.isObstacle(col + dCol, row + dRow)) return false;
+    return dCol == 0
+        || dRow == 0
+        || (!grid.isObstacle(col + dCol, row) && !grid.isObstacle(col, row + dRow));
+  }
+
+  private static Pose2d[] getGoalPoses() {
+    Pose2d[] goals = new Pose2d[15];
+    for (int i = 0; i < 12; i++) {
+      goals[i] = FieldConstants.ReefScoringPositions[i];
+    }
+    goals[kFirstCoralStationGoal] = FieldConstants.STATION_POSITION[0];
+    goals[kFirstCoralStationGoal + 1] = FieldConstants.STATION_POSITION[1];
+
+    // The processor face is on the wall, back off so the robot fits and face it
+    Pose2d processor =
+        new Pose2d(FieldConstants.Processor.centerFace.getTranslation(), Rotation2d.kZero);
+    goals[kProcessorGoal] =
+        new Pose2d(
+            FieldConstants.translateCoordinates(processor, 90, FieldConstants.distanceBackFromReef)
+                .getTranslation(),
+            FieldConstants.Processor.centerFace.getRotation().rotateBy(Rotation2d.kPi));
+    return goals;
+  }
+}
@@ -0,0 +1,66 @@
+package frc.robot.util;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Turns paths found on the navgrid into PathPlanner paths. */
+public class GridPathUtil {
+  /**
+   * Removes every corner of a cell path that can be skipped with a straight line.
+   *
+   * @param grid The grid the cells are from
+   * @param cells The cells from start to goal, each one next to the one before it
+   * @param start The exact start position, used instead of the first cell's center
+   * @param goal The exact goal position, used instead of the last cell's center
+   * @param extraObstacles Cells to also treat as obstacles, or null for only the static grid
+   * @return The corners of the path, including the start and goal
+   */
+  public static List<Translation2d> shortcut(
+      NavGrid grid,
+      List<Integer> cells,
+      Translation2d start,
+      Translation2d goal,
+      boolean[] extraObstacles) {
+    List<Translation2d> path = new ArrayList<>();
+    path.add(start);
+    int anchor = 0;
+    for (int i = 2; i < cells.size(); i++) {
+      if (!grid.hasLineOfSight(cells.get(anchor), cells.get(i), extraObstacles)) {
+        anchor = i - 1;
+        path.add(grid.getCellCenter(cells.get(anchor)));
+      }
+    }
+    path.add(goal);
+    return path;
+  }
+
+  /**
+   * Builds a PathPlanner path through a list of points, facing each one along the direction of
+   * travel like LocalADStar's paths.
+   *
+   * @return The path, or null if there are fewer than two points or the start is on the goal
+   */
+  public static PathPlannerPath toPath(
+      List<Translation2d> points, PathConstraints constraints, GoalEndState goalEndState) {
+    if (points.size() < 2 || points.get(0).getDistance(points.get(points.size() - 1)) < 0.01) {
+      return null;
+    }
+
+    List<Pose2d> poses = new ArrayList<>();
+    for (int i = 0; i < points.size(); i++) {
+      Translation2d direction =
+          i < points.size() - 1
+              ? points.get(i + 1).minus(points.get(i))
+              : points.get(i).minus(points.get(i - 1));
+      poses.add(new Pose2d(points.get(i), direction.getAngle()));
+    }
+
+    return new PathPlannerPath(
+        PathPlannerPath.waypointsFromPoses(poses), constraints, null, goalEndState);
+  }
+}
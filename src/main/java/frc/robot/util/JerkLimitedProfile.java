@@ -0,0 +1,188 @@
+package frc.robot.util;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A time-optimal one dimensional motion profile with limited velocity, acceleration and jerk
+ * (an S-curve). It starts at zero with a given velocity and ends at rest at the goal distance, as
+ * up to seven constant jerk segments: ramp the acceleration up, hold it, ramp it down, cruise, then
+ * the same in reverse to stop.
+ */
+public class JerkLimitedProfile {
+  /** A point along the profile. */
+  public static class State {
+    public final double position;
+    public final double velocity;
+    public final double acceleration;
+
+    public State(double position, double velocity, double acceleration) {
+      this.position = position;
+      this.velocity = velocity;
+      this.acceleration = acceleration;
+    }
+  }
+
+  private static final int kSearchIterations = 40;
+
+  private final double distance;
+  private final double[] durations = new double[7];
+  private final double[] jerks = new double[7];
+  private final double startVelocity;
+  private final double totalTime;
+
+  /**
+   * Builds the profile. If the start velocity is too high to stop within the distance, the profile
+   * starts from the fastest velocity it can stop from instead.
+   *
+   * @param distance The distance to travel, at least zero
+   * @param startVelocity The velocity toward the goal at the start, negative values count as zero
+   * @param maxVelocity The velocity limit
+   * @param maxAcceleration The acceleration limit
+   * @param maxJerk The jerk limit
+   */
+  public JerkLimitedProfile(
+      double distance,
+      double startVelocity,
+      double maxVelocity,
+      double maxAcceleration,
+      double maxJerk) {
+    this.distance = distance;
+    double v0 = Math.max(0, startVelocity);
+
+    // Fastest start velocity that can still stop in time
+    if (stopDistance(v0, maxAcceleration, maxJerk) > distance) {
+      v0 = solve(0, v0, v -> stopDistance(v, maxAcceleration, maxJerk) - distance);
+    }
+    double from = v0;
+    this.startVelocity = from;
+
+    // Peak velocity, the limit if there is room to cruise and otherwise the one that just fits
+    double peak = Math.max(from, maxVelocity);
+    if (rampDistance(from, peak, maxAcceleration, maxJerk) > distance) {
+      peak = solve(from, peak, v -> rampDistance(from, v, maxAcceleration, maxJerk) - distance);
+    }
+    double cruiseTime = (distance - rampDistance(from, peak, maxAcceleration, maxJerk)) / peak;
+
+    setRamp(0, peak - from, maxAcceleration, maxJerk);
+    durations[3] = peak > 0 ? Math.max(0, cruiseTime) : 0;
+    setRamp(4, -peak, maxAcceleration, maxJerk);
+
+    double time = 0;
+    for (double duration : durations) time += duration;
+    totalTime = time;
+  }
+
+  /** Returns the time the profile takes to reach the goal, in seconds. */
+  public double totalTime() {
+    return totalTime;
+  }
+
+  /** Returns the velocity the profile starts from, after limiting it to what can stop in time. */
+  public double getStartVelocity() {
+    return startVelocity;
+  }
+
+  /** Samples the profile at a time since its start. */
+  public State sample(double time) {
+    if (time >= totalTime) return new State(distance, 0, 0);
+
+    double position = 0, velocity = startVelocity, acceleration = 0;
+    double remaining = Math.max(0, time);
+    for (int i = 0; i < 7; i++) {
+      double t = Math.min(remaining, durations[i]);
+      double jerk = jerks[i];
+      position += velocity * t + acceleration * t * t / 2 + jerk * t * t * t / 6;
+      velocity += acceleration * t + jerk * t * t / 2;
+      acceleration += jerk * t;
+      remaining -= t;
+      if (remaining <= 0) break;
+    }
+    return new State(position, velocity, acceleration);
+  }
+
+  /**
+   * Builds a profile that takes at least a given time by scaling down the limits, so two profiles
+   * can be made to arrive together.
+   *
+   * @return The profile with the limits as high as possible while taking at least the given time
+   */
+  public static JerkLimitedProfile withMinimumTime(
+      double distance,
+      double startVelocity,
+      double maxVelocity,
+      double maxAcceleration,
+      double maxJerk,
+      double minimumTime) {
+    JerkLimitedProfile profile =
+        new JerkLimitedProfile(distance, startVelocity, maxVelocity, maxAcceleration, maxJerk);
+    if (profile.totalTime >= minimumTime) return profile;
+
+    // Scaling the limits by s, s^2 and s^3 stretches the profile's time by 1/s
+    double low = 0, high = 1;
+    for (int i = 0; i < kSearchIterations; i++) {
+      double scale = (low + high) / 2;
+      JerkLimitedProfile scaled =
+          new JerkLimitedProfile(
+              distance,
+              startVelocity,
+              maxVelocity * scale,
+              maxAcceleration * scale * scale,
+              maxJerk * scale * scale * scale);
+      if (scaled.totalTime >= minimumTime) {
+        low = scale;
+        profile = scaled;
+      } else {
+        high = scale;
+      }
+    }
+    return profile;
+  }
+
+  // Fills three segments that change the velocity by the given amount as fast as possible
+  private void setRamp(int first, double deltaVelocity, double maxAcceleration, double maxJerk) {
+    double sign = Math.signum(deltaVelocity);
+    double[] times = rampTimes(Math.abs(deltaVelocity), maxAcceleration, maxJerk);
+    durations[first] = times[0];
+    durations[first + 1] = times[1];
+    durations[first + 2] = times[0];
+    jerks[first] = sign * maxJerk;
+    jerks[first + 1] = 0;
+    jerks[first + 2] = -sign * maxJerk;
+  }
+
+  // Jerk time and constant acceleration time to change the velocity by a given amount
+  private static double[] rampTimes(double deltaVelocity, double maxAcceleration, double maxJerk) {
+    if (deltaVelocity >= maxAcceleration * maxAcceleration / maxJerk) {
+      double jerkTime = maxAcceleration / maxJerk;
+      return new double[] {jerkTime, deltaVelocity / maxAcceleration - jerkTime};
+    }
+    return new double[] {Math.sqrt(deltaVelocity / maxJerk), 0};
+  }
+
+  // Distance to stop from a velocity, the ramp is symmetric so it averages half the velocity
+  private static double stopDistance(double velocity, double maxAcceleration, double maxJerk) {
+    double[] times = rampTimes(velocity, maxAcceleration, maxJerk);
+    return velocity / 2 * (2 * times[0] + times[1]);
+  }
+
+  // Distance to speed up from the start velocity to a peak, then stop without cruising
+  private static double rampDistance(
+      double startVelocity, double peakVelocity, double maxAcceleration, double maxJerk) {
+    double[] times = rampTimes(peakVelocity - startVelocity, maxAcceleration, maxJerk);
+    return (startVelocity + peakVelocity) / 2 * (2 * times[0] + times[1])
+        + stopDistance(peakVelocity, maxAcceleration, maxJerk);
+  }
+
+  // Bisection for the root of an increasing function between two bounds
+  private static double solve(double low, double high, DoubleUnaryOperator function) {
+    for (int i = 0; i < kSearchIterations; i++) {
+      double middle = (low + high) / 2;
+      if (function.applyAsDouble(middle) > 0) {
+        high = middle;
+      } else {
+        low = middle;
+      }
+    }
+    return low;
+  }
+}
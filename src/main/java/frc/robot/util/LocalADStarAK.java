@@ -8,7 +8,10 @@ import com.pathplanner.lib.pathfinding.LocalADStar;
 import com.pathplanner.lib.pathfinding.Pathfinder;
 import edu.wpi.first.math.Pair;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.littletonrobotics.junction.LogTable;
@@ -69,6 +72,7 @@ public class LocalADStarAK implements Pathfinder {
   public void setStartPosition(Translation2d startPosition) {
     if (!Logger.hasReplaySource()) {
       io.adStar.setStartPosition(startPosition);
+      io.setStartPosition(startPosition);
     }
   }
 
@@ -82,6 +86,7 @@ public class LocalADStarAK implements Pathfinder {
   public void setGoalPosition(Translation2d goalPosition) {
     if (!Logger.hasReplaySource()) {
       io.adStar.setGoalPosition(goalPosition);
+      io.setGoalPosition(goalPosition);
     }
   }
 
@@ -98,56 +103,138 @@ public class LocalADStarAK implements Pathfinder {
       List<Pair<Translation2d, Translation2d>> obs, Translation2d currentRobotPos) {
     if (!Logger.hasReplaySource()) {
       io.adStar.setDynamicObstacles(obs, currentRobotPos);
+      io.setHasDynamicObstacles(!obs.isEmpty(), currentRobotPos);
     }
   }
 
   private static class ADStarIO implements LoggableInputs {
     public LocalADStar adStar = new LocalADStar();
     public boolean isNewPathAvailable = false;
+    public boolean usingGoalField = false;
     public List<PathPoint> currentPathPoints = Collections.emptyList();
 
+    // The path is logged as its points, with a version that changes with the path
+    private Translation2d[] pathTranslations = new Translation2d[0];
+    private int pathVersion = 0;
+    private int loggedPathVersion = -1;
+
+    // Paths to the fixed scoring goals come straight from precomputed distance fields, ADStar is
+    // only needed for other goals or when there are dynamic obstacles
+    private volatile GoalDistanceFields goalFields = null;
+    private Translation2d startPosition = new Translation2d();
+    private Translation2d goalPosition = new Translation2d();
+    private int fieldGoal = -1;
+    private boolean fieldGoalIsRed = false;
+    private boolean hasDynamicObstacles = false;
+    private boolean fieldPathPending = false;
+
+    public ADStarIO() {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  goalFields = GoalDistanceFields.getShared();
+                } catch (IOException e) {
+                  DriverStation.reportError(
+                      "Failed to load navgrid for goal distance fields", e.getStackTrace());
+                }
+              },
+              "GoalDistanceFields");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
     @Override
     public void toLog(LogTable table) {
       table.put("IsNewPathAvailable", isNewPathAvailable);
+      table.put("UsingGoalField", usingGoalField);
+      table.put("PathVersion", pathVersion);
 
-      double[] pointsLogged = new double[currentPathPoints.size() * 2];
-      int idx = 0;
-      for (PathPoint point : currentPathPoints) {
-        pointsLogged[idx] = point.position.getX();
-        pointsLogged[idx + 1] = point.position.getY();
-        idx += 2;
+      // Values stay in the table until overwritten, so the path only needs writing when it changes
+      if (loggedPathVersion != pathVersion) {
+        table.put("CurrentPathPoints", pathTranslations);
+        loggedPathVersion = pathVersion;
       }
-
-      table.put("CurrentPathPoints", pointsLogged);
     }
 
     @Override
     public void fromLog(LogTable table) {
       isNewPathAvailable = table.get("IsNewPathAvailable", false);
+      usingGoalField = table.get("UsingGoalField", false);
+
+      // Only decode the path when it changed, otherwise keep the points from last time
+      int version = table.get("PathVersion", 0);
+      if (version != pathVersion) {
+        pathTranslations = table.get("CurrentPathPoints", new Translation2d[0]);
+        currentPathPoints = toPathPoints(pathTranslations);
+        pathVersion = version;
+      }
+    }
 
-      double[] pointsLogged = table.get("CurrentPathPoints", new double[0]);
+    public void setStartPosition(Translation2d startPosition) {
+      this.startPosition = startPosition;
+      fieldPathPending = true;
+    }
 
-      List<PathPoint> pathPoints = new ArrayList<>();
-      for (int i = 0; i < pointsLogged.length; i += 2) {
-        pathPoints.add(
-            new PathPoint(new Translation2d(pointsLogged[i], pointsLogged[i + 1]), null));
-      }
+    public void setGoalPosition(Translation2d goalPosition) {
+      this.goalPosition = goalPosition;
+      fieldPathPending = true;
+    }
 
-      currentPathPoints = pathPoints;
+    public void setHasDynamicObstacles(boolean hasDynamicObstacles, Translation2d robotPosition) {
+      this.hasDynamicObstacles = hasDynamicObstacles;
+      startPosition = robotPosition;
+      fieldPathPending = true;
     }
 
     public void updateIsNewPathAvailable() {
-      isNewPathAvailable = adStar.isNewPathAvailable();
+      updateFieldGoal();
+      isNewPathAvailable = usingGoalField ? fieldPathPending : adStar.isNewPathAvailable();
     }
 
     public void updateCurrentPathPoints(PathConstraints constraints, GoalEndState goalEndState) {
-      PathPlannerPath currentPath = adStar.getCurrentPath(constraints, goalEndState);
-
-      if (currentPath != null) {
-        currentPathPoints = currentPath.getAllPathPoints();
-      } else {
-        currentPathPoints = Collections.emptyList();
+      updateFieldGoal();
+      PathPlannerPath currentPath =
+          usingGoalField
+              ? getFieldPath(constraints, goalEndState)
+              : adStar.getCurrentPath(constraints, goalEndState);
+
+      Translation2d[] translations =
+          toTranslations(currentPath != null ? currentPath.getAllPathPoints() : List.of());
+      if (!Arrays.equals(translations, pathTranslations)) {
+        // Follow the same points replay will see, so replay matches the real robot
+        pathTranslations = translations;
+        currentPathPoints = toPathPoints(translations);
+        pathVersion++;
       }
     }
+
+    private void updateFieldGoal() {
+      fieldGoalIsRed = AllianceFlipUtil.shouldFlip();
+      fieldGoal = goalFields == null ? -1 : goalFields.findGoal(goalPosition, fieldGoalIsRed);
+      usingGoalField = fieldGoal >= 0 && !hasDynamicObstacles;
+    }
+
+    private PathPlannerPath getFieldPath(PathConstraints constraints, GoalEndState goalEndState) {
+      fieldPathPending = false;
+      List<Translation2d> points = goalFields.getPath(startPosition, fieldGoal, fieldGoalIsRed);
+      if (points.isEmpty()) return null;
+
+      // The field's goal is within a cell of the requested one, end exactly where we were asked
+      points.set(points.size() - 1, goalPosition);
+      return GridPathUtil.toPath(points, constraints, goalEndState);
+    }
+  }
+
+  private static Translation2d[] toTranslations(List<PathPoint> points) {
+    Translation2d[] translations = new Translation2d[points.size()];
+    for (int i = 0; i < translations.length; i++) translations[i] = points.get(i).position;
+    return translations;
+  }
+
+  private static List<PathPoint> toPathPoints(Translation2d[] translations) {
+    List<PathPoint> points = new ArrayList<>(translations.length);
+    for (Translation2d translation : translations) points.add(new PathPoint(translation, null));
+    return points;
   }
 }
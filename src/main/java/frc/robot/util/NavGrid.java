@@ -0,0 +1,204 @@
+package frc.robot.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * The static obstacle grid from PathPlanner's navgrid.json. Cells are indexed the same way as
+ * PathPlanner's pathfinder, column along field x and row along field y, so cells line up with the
+ * ones LocalADStar uses.
+ *
+ * <p>The grid is normally loaded from navgrid.bin, which the packNavGrid Gradle task builds from
+ * the JSON. It is a 24 byte big-endian header (int magic "NAVG", int version, double node size, int
+ * columns, int rows) followed by one bit per cell in row-major order, set for obstacles. The file
+ * is memory-mapped, so loading is instant and the grid stays small even at fine resolutions.
+ */
+public class NavGrid {
+  private static final int kMagic = 0x4E415647; // "NAVG"
+  private static final int kVersion = 1;
+  private static final int kHeaderBytes = 24;
+
+  private final double nodeSize;
+  private final int cols;
+  private final int rows;
+  private final ByteBuffer obstacleBits;
+
+  private NavGrid(double nodeSize, int cols, int rows, ByteBuffer obstacleBits) {
+    this.nodeSize = nodeSize;
+    this.cols = cols;
+    this.rows = rows;
+    this.obstacleBits = obstacleBits;
+  }
+
+  /**
+   * Loads the navgrid from the deploy directory, from the packed file if it was built and from the
+   * JSON otherwise.
+   */
+  public static NavGrid load() throws IOException {
+    File packed = new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.bin");
+    if (packed.exists()) return loadPacked(packed);
+    return loadJson(new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.json"));
+  }
+
+  /** Memory-maps a packed navgrid file. */
+  public static NavGrid loadPacked(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.limit() < kHeaderBytes
+          || buffer.getInt(0) != kMagic
+          || buffer.getInt(4) != kVersion) {
+        throw new IOException("Not a packed navgrid: " + file);
+      }
+
+      double nodeSize = buffer.getDouble(8);
+      int cols = buffer.getInt(16);
+      int rows = buffer.getInt(20);
+      if (buffer.limit() < kHeaderBytes + (rows * cols + 7) / 8) {
+        throw new IOException("Packed navgrid is truncated: " + file);
+      }
+      return new NavGrid(nodeSize, cols, rows, buffer.position(kHeaderBytes).slice());
+    }
+  }
+
+  /** Parses a PathPlanner navgrid.json file. */
+  public static NavGrid loadJson(File file) throws IOException {
+    JsonNode json = new ObjectMapper().readTree(file);
+
+    double nodeSize = json.get("nodeSizeMeters").asDouble();
+    JsonNode grid = json.get("grid");
+    int rows = grid.size();
+    int cols = grid.get(0).size();
+
+    ByteBuffer obstacleBits = ByteBuffer.allocate((rows * cols + 7) / 8);
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        if (grid.get(row).get(col).asBoolean()) {
+          int cell = row * cols + col;
+          obstacleBits.put(cell >> 3, (byte) (obstacleBits.get(cell >> 3) | (1 << (cell & 7))));
+        }
+      }
+    }
+    return new NavGrid(nodeSize, cols, rows, obstacleBits);
+  }
+
+  public double getNodeSize() {
+    return nodeSize;
+  }
+
+  public int getCols() {
+    return cols;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getCellCount() {
+    return rows * cols;
+  }
+
+  /** Returns the index of the cell containing a field position, clamped to the grid. */
+  public int getCell(Translation2d position) {
+    int col = Math.min(Math.max((int) Math.floor(position.getX() / nodeSize), 0), cols - 1);
+    int row = Math.min(Math.max((int) Math.floor(position.getY() / nodeSize), 0), rows - 1);
+    return row * cols + col;
+  }
+
+  public int getCol(int cell) {
+    return cell % cols;
+  }
+
+  public int getRow(int cell) {
+    return cell / cols;
+  }
+
+  /** Returns the field position of the center of a cell. */
+  public Translation2d getCellCenter(int cell) {
+    return new Translation2d((getCol(cell) + 0.5) * nodeSize, (getRow(cell) + 0.5) * nodeSize);
+  }
+
+  public boolean isObstacle(int col, int row) {
+    if (col < 0 || col >= cols || row < 0 || row >= rows) return true;
+    return isObstacle(row * cols + col);
+  }
+
+  public boolean isObstacle(int cell) {
+    return (obstacleBits.get(cell >> 3) & (1 << (cell & 7))) != 0;
+  }
+
+  /** Finds the closest free cell to the given one, searching outward. Returns -1 if none. */
+  public int nearestFreeCell(int cell) {
+    return nearestFreeCell(cell, null);
+  }
+
+  /**
+   * Finds the closest free cell to the given one, searching outward.
+   *
+   * @param cell The cell to start from
+   * @param extraObstacles Cells to also treat as obstacles, or null for only the static grid
+   * @return The closest free cell, or -1 if there isn't one
+   */
+  public int nearestFreeCell(int cell, boolean[] extraObstacles) {
+    if (!isBlocked(cell, extraObstacles)) return cell;
+
+    boolean[] visited = new boolean[getCellCount()];
+    Queue<Integer> queue = new ArrayDeque<>();
+    queue.add(cell);
+    visited[cell] = true;
+    while (!queue.isEmpty()) {
+      int current = queue.poll();
+      if (!isBlocked(current, extraObstacles)) return current;
+
+      int col = getCol(current), row = getRow(current);
+      int[][] neighbors = {{col + 1, row}, {col - 1, row}, {col, row + 1}, {col, row - 1}};
+      for (int[] neighbor : neighbors) {
+        if (neighbor[0] < 0 || neighbor[0] >= cols || neighbor[1] < 0 || neighbor[1] >= rows) {
+          continue;
+        }
+        int next = neighbor[1] * cols + neighbor[0];
+        if (!visited[next]) {
+          visited[next] = true;
+          queue.add(next);
+        }
+      }
+    }
+    return -1;
+  }
+
+  /** Returns true if the straight line between two cell centers only passes through free cells. */
+  public boolean hasLineOfSight(int from, int to) {
+    return hasLineOfSight(from, to, null);
+  }
+
+  /**
+   * Returns true if the straight line between two cell centers only passes through free cells.
+   *
+   * @param extraObstacles Cells to also treat as obstacles, or null for only the static grid
+   */
+  public boolean hasLineOfSight(int from, int to, boolean[] extraObstacles) {
+    Translation2d start = getCellCenter(from);
+    Translation2d end = getCellCenter(to);
+    // Sample at a quarter cell so the line can't skip over a corner
+    int steps = (int) Math.ceil(start.getDistance(end) / (nodeSize / 4));
+    for (int i = 0; i <= steps; i++) {
+      Translation2d point = start.interpolate(end, steps == 0 ? 0 : (double) i / steps);
+      if (isBlocked(getCell(point), extraObstacles)) return false;
+    }
+    return true;
+  }
+
+  /** Returns true if a cell is a static obstacle or marked in the extra obstacles. */
+  public boolean isBlocked(int cell, boolean[] extraObstacles) {
+    return isObstacle(cell) || (extraObstacles != null && extraObstacles[cell]);
+  }
+}
@@ -0,0 +1,238 @@
+package frc.robot.util;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+/**
+ * Computes paths to the goals the robot is most likely to drive to next while the current command
+ * runs, so a pathfinding command can start following one right away instead of waiting for the
+ * pathfinder. After scoring the robot heads to a coral station and after intaking it heads back to
+ * the reef. Paths come from the goal distance fields on a background thread and are kept in a
+ * small LRU cache, refreshed as the robot moves. Whether a lookup hits the cache depends on the
+ * background thread, so lookups are logged as inputs and replay follows the same paths.
+ *
+ * <p>Everything here uses a blue alliance origin like PathPlanner paths, which get flipped when
+ * they are followed on the red alliance.
+ */
+public class PathPrefetcher {
+  /** What the robot will most likely do next, which decides the goals to prefetch. */
+  public static enum NextTask {
+    /** Holding coral, head to the reef */
+    SCORE,
+
+    /** Just scored, head to a coral station */
+    INTAKE
+  }
+
+  private static final int kCacheSize = 4;
+  private static final int kPredictedGoals = 2; // Closest likely goals to prefetch
+  // A cached path is refreshed once the robot is this far from its start, and not used past this
+  private static final double kRefreshDistance = 0.15; // meters
+  private static final double kMaxStartError = 0.3; // meters
+
+  private static class CachedPath {
+    final Translation2d start;
+    final Translation2d[] points;
+
+    CachedPath(Translation2d start, Translation2d[] points) {
+      this.start = start;
+      this.points = points;
+    }
+  }
+
+  private final PrefetcherIO io = new PrefetcherIO();
+  private final PathConstraints constraints;
+  private NextTask nextTask = NextTask.SCORE;
+  private List<Integer> predictedGoals = List.of(0);
+
+  private final Object lock = new Object();
+  // Keyed by goal index, least recently used first
+  private final Map<Integer, CachedPath> cache =
+      new LinkedHashMap<>(kCacheSize, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CachedPath> eldest) {
+          return size() > kCacheSize;
+        }
+      };
+  private Pose2d requestPose = null;
+  private List<Integer> requestGoals = List.of();
+
+  /**
+   * Starts the prefetch thread.
+   *
+   * @param constraints The constraints for the prefetched paths
+   */
+  public PathPrefetcher(PathConstraints constraints) {
+    this.constraints = constraints;
+
+    Thread thread = new Thread(this::runPrefetcher, "PathPrefetcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Sets what the robot will do next, usually when a scoring or intake command finishes. */
+  public void setNextTask(NextTask task) {
+    nextTask = task;
+  }
+
+  public NextTask getNextTask() {
+    return nextTask;
+  }
+
+  /**
+   * Predicts the next goals from the next task and the robot's pose and asks the background thread
+   * to prefetch them. Should be called once per loop.
+   *
+   * @param robotPose The current robot pose with a blue alliance origin
+   */
+  public void update(Pose2d robotPose) {
+    predictedGoals = predictGoals(robotPose);
+    synchronized (lock) {
+      requestPose = robotPose;
+      requestGoals = predictedGoals;
+      lock.notifyAll();
+    }
+
+    Logger.recordOutput("PathPrefetcher/NextTask", nextTask.toString());
+    Logger.recordOutput(
+        "PathPrefetcher/PredictedGoals",
+        predictedGoals.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /** Returns the most likely next goal as of the last update. */
+  public int getPredictedGoal() {
+    return predictedGoals.get(0);
+  }
+
+  /**
+   * Returns the prefetched path to a goal if there is one that starts close enough to the robot.
+   *
+   * @param goal The goal index in {@link GoalDistanceFields#kGoals}
+   * @param robotPose The current robot pose with a blue alliance origin
+   */
+  public Optional<PathPlannerPath> getPath(int goal, Pose2d robotPose) {
+    if (!Logger.hasReplaySource()) {
+      io.lookUp(goal, robotPose.getTranslation());
+    }
+
+    Logger.processInputs("PathPrefetcher", io);
+
+    if (!io.cacheHit) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(
+        GridPathUtil.toPath(
+            List.of(io.pathPoints),
+            constraints,
+            new GoalEndState(0, GoalDistanceFields.kGoalPoses[goal].getRotation())));
+  }
+
+  /** Forgets every prefetched path, for example after the pose is reset. */
+  public void clear() {
+    synchronized (lock) {
+      cache.clear();
+    }
+  }
+
+  // The coral stations after scoring, otherwise the closest reef positions
+  private List<Integer> predictGoals(Pose2d robotPose) {
+    List<Integer> goals = new ArrayList<>();
+    if (nextTask == NextTask.INTAKE) {
+      goals.add(GoalDistanceFields.kFirstCoralStationGoal);
+      goals.add(GoalDistanceFields.kFirstCoralStationGoal + 1);
+    } else {
+      for (int goal = 0; goal < GoalDistanceFields.kFirstCoralStationGoal; goal++) goals.add(goal);
+    }
+
+    Translation2d position = robotPose.getTranslation();
+    goals.sort(
+        Comparator.comparingDouble(goal -> GoalDistanceFields.kGoals[goal].getDistance(position)));
+    return goals.subList(0, Math.min(goals.size(), kPredictedGoals));
+  }
+
+  private void runPrefetcher() {
+    GoalDistanceFields goalFields;
+    try {
+      goalFields = GoalDistanceFields.getShared();
+    } catch (IOException e) {
+      DriverStation.reportError("Failed to load navgrid for path prefetching", e.getStackTrace());
+      return;
+    }
+
+    while (true) {
+      Pose2d pose;
+      List<Integer> goals;
+      synchronized (lock) {
+        while (requestPose == null) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        pose = requestPose;
+        goals = requestGoals;
+        requestPose = null;
+      }
+
+      for (int goal : goals) {
+        CachedPath cached;
+        synchronized (lock) {
+          cached = cache.get(goal);
+        }
+        if (cached != null && cached.start.getDistance(pose.getTranslation()) < kRefreshDistance) {
+          continue;
+        }
+
+        List<Translation2d> points = goalFields.getPath(pose.getTranslation(), goal, false);
+        if (points.size() < 2) continue; // Unreachable or already there
+
+        synchronized (lock) {
+          cache.put(
+              goal, new CachedPath(pose.getTranslation(), points.toArray(new Translation2d[0])));
+        }
+      }
+    }
+  }
+
+  private class PrefetcherIO implements LoggableInputs {
+    public boolean cacheHit = false;
+    public Translation2d[] pathPoints = new Translation2d[0];
+
+    public void lookUp(int goal, Translation2d position) {
+      CachedPath cached;
+      synchronized (lock) {
+        cached = cache.get(goal);
+      }
+      cacheHit = cached != null && cached.start.getDistance(position) < kMaxStartError;
+      pathPoints = cacheHit ? cached.points : new Translation2d[0];
+    }
+
+    @Override
+    public void toLog(LogTable table) {
+      table.put("CacheHit", cacheHit);
+      table.put("PathPoints", pathPoints);
+    }
+
+    @Override
+    public void fromLog(LogTable table) {
+      cacheHit = table.get("CacheHit", false);
+      pathPoints = table.get("PathPoints", new Translation2d[0]);
+    }
+  }
+}
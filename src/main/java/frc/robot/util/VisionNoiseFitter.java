@@ -0,0 +1,326 @@
+package frc.robot.util;
+
+import static frc.robot.subsystems.vision.VisionConstants.kTagLayout;
+import static frc.robot.subsystems.vision.VisionConstants.numCameras;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import frc.robot.subsystems.vision.VisionIO;
+import frc.robot.subsystems.vision.VisionNoiseModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import org.ejml.simple.SimpleMatrix;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.wpilog.WPILOGReader;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/**
+ * Offline tool that fits the vision noise model from real match logs. Every vision estimate in the
+ * logs is compared against smoothed odometry at the same time, and a std dev model is fit per
+ * camera as a function of distance, tag count and ambiguity. The result is written out as {@link
+ * VisionNoiseModel}.
+ *
+ * <p>Run with {@code ./gradlew fitVisionNoise -Plogs=<log1.wpilog>,<log2.wpilog>}. Logs are
+ * streamed one cycle at a time, so only the fit's running sums are kept in memory.
+ */
+public class VisionNoiseFitter {
+  private static final String kOutputPath =
+      "src/main/java/frc/robot/subsystems/vision/VisionNoiseModel.java";
+
+  // Odometry is averaged over this window centered on the measurement to smooth out noise
+  private static final double kSmoothingWindowSeconds = 0.2;
+  // Residuals bigger than this are pose resets or bad logs, not camera noise
+  private static final double kMaxResidualMeters = 2.0;
+  // Cameras with fewer measurements than this keep their current model
+  private static final int kMinSamples = 50;
+
+  // For Gaussian noise, E|r| = sigma * sqrt(2 / pi)
+  private static final double kAbsToStdDev = Math.sqrt(Math.PI / 2);
+
+  private static class Measurement {
+    final int camera;
+    final double timestamp;
+    final Pose2d pose;
+    final int tagCount;
+    final double distance;
+    final double ambiguity;
+
+    Measurement(
+        int camera,
+        double timestamp,
+        Pose2d pose,
+        int tagCount,
+        double distance,
+        double ambiguity) {
+      this.camera = camera;
+      this.timestamp = timestamp;
+      this.pose = pose;
+      this.tagCount = tagCount;
+      this.distance = distance;
+      this.ambiguity = ambiguity;
+    }
+  }
+
+  // Running least squares sums, so the fit never needs every sample in memory
+  private static class LeastSquares {
+    final SimpleMatrix xtx;
+    final SimpleMatrix xty;
+    int count = 0;
+
+    LeastSquares(int features) {
+      xtx = new SimpleMatrix(features, features);
+      xty = new SimpleMatrix(features, 1);
+    }
+
+    void add(double[] features, double target) {
+      for (int r = 0; r < features.length; r++) {
+        for (int c = 0; c < features.length; c++) {
+          xtx.set(r, c, xtx.get(r, c) + features[r] * features[c]);
+        }
+        xty.set(r, 0, xty.get(r, 0) + features[r] * target);
+      }
+      count++;
+    }
+
+    Optional<double[]> solve() {
+      if (count < kMinSamples) return Optional.empty();
+      try {
+        SimpleMatrix beta = xtx.solve(xty);
+        double[] coefficients = new double[beta.getNumRows()];
+        for (int i = 0; i < coefficients.length; i++) coefficients[i] = beta.get(i, 0);
+        return Optional.of(coefficients);
+      } catch (RuntimeException e) {
+        return Optional.empty();
+      }
+    }
+  }
+
+  private final VisionIO decoder = new VisionIO() {};
+  private final TimeInterpolatableBuffer<Pose2d> odometryHistory =
+      TimeInterpolatableBuffer.createBuffer(2.0);
+  private final Queue<Measurement> pending = new ArrayDeque<>();
+  private final double[] lastTimestamps = new double[numCameras];
+  private boolean hasVisionInputs = false;
+
+  // Single tag: std ~ a + b * d^2 + c * ambiguity, multi tag: std ~ a + b * d^2
+  private final LeastSquares[] singleTagFits = new LeastSquares[numCameras];
+  private final LeastSquares[] multiTagFits = new LeastSquares[numCameras];
+
+  private VisionNoiseFitter() {
+    for (int i = 0; i < numCameras; i++) {
+      singleTagFits[i] = new LeastSquares(3);
+      multiTagFits[i] = new LeastSquares(2);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: ./gradlew fitVisionNoise -Plogs=<log1.wpilog>,<log2.wpilog>");
+      System.exit(1);
+    }
+
+    VisionNoiseFitter fitter = new VisionNoiseFitter();
+    for (String log : args) {
+      System.out.println("Reading " + log);
+      fitter.readLog(log);
+    }
+    if (!fitter.hasEnoughSamples()) {
+      System.err.println(
+          "No camera has " + kMinSamples + " usable measurements, VisionNoiseModel not written");
+      System.exit(1);
+    }
+    fitter.writeModel(Path.of(kOutputPath));
+  }
+
+  // Only fit from logs that were recorded with vision inputs logged
+  private static void exitWithoutVisionInputs(String path) {
+    System.err.println(
+        path
+            + " has no Vision/results or Vision/estimate inputs. Vision input logging must be"
+            + " enabled (Logger.processInputs(\"Vision\", ...) in Drive) to fit the noise model.");
+    System.exit(1);
+  }
+
+  private boolean hasEnoughSamples() {
+    for (int i = 0; i < numCameras; i++) {
+      if (singleTagFits[i].count >= kMinSamples || multiTagFits[i].count >= kMinSamples) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void readLog(String path) {
+    WPILOGReader reader = new WPILOGReader(path);
+    reader.start();
+    LogTable table = new LogTable(0);
+
+    odometryHistory.clear();
+    pending.clear();
+    Arrays.fill(lastTimestamps, 0);
+    hasVisionInputs = false;
+
+    while (reader.updateTable(table)) {
+      double timestamp = table.getTimestamp() / 1e6;
+      odometryHistory.addSample(timestamp, table.get("RealOutputs/Odometry/Robot", new Pose2d()));
+
+      readVision(table);
+
+      // A measurement can be used once odometry has been logged past the end of its window
+      while (!pending.isEmpty()
+          && pending.peek().timestamp + kSmoothingWindowSeconds / 2 <= timestamp) {
+        fit(pending.poll());
+      }
+    }
+    if (!hasVisionInputs) exitWithoutVisionInputs(path);
+  }
+
+  private void readVision(LogTable table) {
+    if (table.get("Vision/results") == null || table.get("Vision/estimate") == null) return;
+    hasVisionInputs = true;
+
+    PhotonPipelineResult[] results =
+        decoder.decodeResults(table.get("Vision/results", new byte[0][]));
+    Pose2d[] estimates = table.get("Vision/estimate", new Pose2d[0]);
+    if (results.length != numCameras || estimates.length != numCameras) return;
+
+    for (int i = 0; i < numCameras; i++) {
+      PhotonPipelineResult result = results[i];
+      double timestamp = result.getTimestampSeconds();
+
+      // Inputs are logged every cycle, only count each camera frame once
+      if (timestamp == lastTimestamps[i]) continue;
+      lastTimestamps[i] = timestamp;
+
+      if (!result.hasTargets() || estimates[i].equals(new Pose2d())) continue;
+
+      int tagCount = 0;
+      double distance = 0;
+      for (PhotonTrackedTarget target : result.getTargets()) {
+        Optional<Pose3d> tagPose = kTagLayout.getTagPose(target.getFiducialId());
+        if (tagPose.isEmpty()) continue;
+        tagCount++;
+        distance +=
+            tagPose.get().toPose2d().getTranslation().getDistance(estimates[i].getTranslation());
+      }
+      if (tagCount == 0) continue;
+
+      pending.add(
+          new Measurement(
+              i,
+              timestamp,
+              estimates[i],
+              tagCount,
+              distance / tagCount,
+              result.getBestTarget().getPoseAmbiguity()));
+    }
+  }
+
+  private void fit(Measurement measurement) {
+    double halfWindow = kSmoothingWindowSeconds / 2;
+    Optional<Pose2d> before = odometryHistory.getSample(measurement.timestamp - halfWindow);
+    Optional<Pose2d> center = odometryHistory.getSample(measurement.timestamp);
+    Optional<Pose2d> after = odometryHistory.getSample(measurement.timestamp + halfWindow);
+    if (before.isEmpty() || center.isEmpty() || after.isEmpty()) return;
+
+    double smoothedX = (before.get().getX() + center.get().getX() + after.get().getX()) / 3;
+    double smoothedY = (before.get().getY() + center.get().getY() + after.get().getY()) / 3;
+    double residualX = Math.abs(measurement.pose.getX() - smoothedX);
+    double residualY = Math.abs(measurement.pose.getY() - smoothedY);
+    if (Math.hypot(residualX, residualY) > kMaxResidualMeters) return;
+
+    double distanceSquared = measurement.distance * measurement.distance;
+    int camera = measurement.camera;
+    for (double residual : new double[] {residualX, residualY}) {
+      if (measurement.tagCount > 1) {
+        multiTagFits[camera].add(new double[] {1, distanceSquared}, residual * kAbsToStdDev);
+      } else {
+        singleTagFits[camera].add(
+            new double[] {1, distanceSquared, measurement.ambiguity}, residual * kAbsToStdDev);
+      }
+    }
+  }
+
+  private void writeModel(Path output) throws IOException {
+    double[] singleBase = VisionNoiseModel.kSingleTagBaseStdDev.clone();
+    double[] singleDivisor = VisionNoiseModel.kSingleTagDistanceDivisor.clone();
+    double[] singleAmbiguity = VisionNoiseModel.kSingleTagAmbiguityGain.clone();
+    double[] multiBase = VisionNoiseModel.kMultiTagBaseStdDev.clone();
+    double[] multiDivisor = VisionNoiseModel.kMultiTagDistanceDivisor.clone();
+    int[] sampleCounts = VisionNoiseModel.kSampleCounts.clone();
+
+    for (int i = 0; i < numCameras; i++) {
+      Optional<double[]> single = singleTagFits[i].solve();
+      Optional<double[]> multi = multiTagFits[i].solve();
+
+      // Convert a + b * d^2 into the base * (1 + d^2 / divisor) form used by VisionIO
+      if (single.isPresent()) {
+        singleBase[i] = Math.max(single.get()[0], 0.01);
+        singleDivisor[i] = toDivisor(singleBase[i], single.get()[1], singleDivisor[i]);
+        singleAmbiguity[i] = Math.max(single.get()[2], 0);
+      }
+      if (multi.isPresent()) {
+        multiBase[i] = Math.max(multi.get()[0], 0.01);
+        multiDivisor[i] = toDivisor(multiBase[i], multi.get()[1], multiDivisor[i]);
+      }
+      if (single.isPresent() || multi.isPresent()) {
+        sampleCounts[i] = (singleTagFits[i].count + multiTagFits[i].count) / 2;
+      }
+
+      System.out.printf(
+          Locale.US,
+          "Camera %d: single tag %s (%d samples), multi tag %s (%d samples)%n",
+          i,
+          single.isPresent() ? "fit" : "kept",
+          singleTagFits[i].count / 2,
+          multi.isPresent() ? "fit" : "kept",
+          multiTagFits[i].count / 2);
+    }
+
+    String source =
+        "package frc.robot.subsystems.vision;\n"
+            + "\n"
+            + "// Generated by frc.robot.util.VisionNoiseFitter, do not edit by hand.\n"
+            + "// Regenerate with: ./gradlew fitVisionNoise -Plogs=<log1.wpilog>,<log2.wpilog>\n"
+            + "//\n"
+            + "// std dev = base * (1 + distance^2 / divisor) + ambiguityGain * ambiguity\n"
+            + "// Arrays are ordered by camera index, like VisionConstants.camNames.\n"
+            + "public class VisionNoiseModel {\n"
+            + field("kSingleTagBaseStdDev", singleBase)
+            + field("kSingleTagDistanceDivisor", singleDivisor)
+            + field("kSingleTagAmbiguityGain", singleAmbiguity)
+            + field("kMultiTagBaseStdDev", multiBase)
+            + field("kMultiTagDistanceDivisor", multiDivisor)
+            + "\n"
+            + "  // Number of measurements each camera's model was fit from (0 = default values)\n"
+            + "  public static final int[] kSampleCounts = "
+            + Arrays.toString(sampleCounts).replace('[', '{').replace(']', '}')
+            + ";\n"
+            + "}\n";
+
+    Files.writeString(output, source);
+    System.out.println("Wrote " + output);
+  }
+
+  // A non-positive distance term means distance didn't matter in the data, keep the old divisor
+  private static double toDivisor(double base, double distanceCoefficient, double fallback) {
+    return distanceCoefficient > 1e-6 ? base / distanceCoefficient : fallback;
+  }
+
+  private static String field(String name, double[] values) {
+    StringBuilder builder = new StringBuilder("  public static final double[] " + name + " = {");
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) builder.append(", ");
+      builder.append(String.format(Locale.US, "%.4f", values[i]));
+    }
+    return builder.append("};\n").toString();
+  }
+}